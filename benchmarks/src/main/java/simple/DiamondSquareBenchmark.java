@@ -0,0 +1,62 @@
+package simple;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simple.HeightMap.Precision;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DiamondSquareBenchmark {
+    @Param({ "6", "8", "10" })
+    public int sizeFactor;
+
+    @Param({ "DOUBLE", "FLOAT" })
+    public Precision precision;
+
+    private HeightMap heightMap, buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        heightMap = DiamondSquare.generateHeightMap(sizeFactor, 1, 0.5, 42, precision, null);
+        int size = 2 * heightMap.getWidth() - 1;
+        buffer = HeightMap.createWithCapacity(1, 1, size, size, precision);
+    }
+
+    @Benchmark
+    public HeightMap generateHeightMap() {
+        return DiamondSquare.generateHeightMap(sizeFactor, 1, 0.5, 42, precision, null);
+    }
+
+    @Benchmark
+    public HeightMap generateHeightMapParallel() {
+        return DiamondSquare.generateHeightMap(sizeFactor, 1, 0.5, 42, precision, ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public HeightMap increaseDefinition() {
+        return DiamondSquare.increaseDefinition(heightMap, 0.1);
+    }
+
+    @Benchmark
+    public HeightMap increaseDefinitionIntoBuffer() {
+        return DiamondSquare.increaseDefinition(heightMap, buffer, 0.1);
+    }
+}
@@ -0,0 +1,35 @@
+package simple;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MathUtilsBenchmark {
+    // changes every call so the hash can't be hoisted out of the loop
+    private long seed = 0;
+
+    @Benchmark
+    public double random() {
+        return MathUtils.random(seed++, -2, 2);
+    }
+
+    @Benchmark
+    public double randomThreeSeeds() {
+        seed++;
+        return MathUtils.random(-2, 2, 42, seed, seed >> 8);
+    }
+}
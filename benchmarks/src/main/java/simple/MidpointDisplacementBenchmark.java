@@ -0,0 +1,44 @@
+package simple;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MidpointDisplacementBenchmark {
+    @Param({ "10", "16", "20" })
+    public int iterations;
+
+    @Param({ "false", "true" })
+    public boolean multiplicative;
+
+    @Benchmark
+    public double[] defaultGenerateHeightmap() {
+        return MidpointDisplacement.defaultGenerateHeightmap(iterations, i -> Math.pow(0.5, i), multiplicative);
+    }
+
+    @Benchmark
+    public double[] defaultGenerateHeightmapSeeded() {
+        return MidpointDisplacement.defaultGenerateHeightmap(iterations, i -> Math.pow(0.5, i), multiplicative, 42);
+    }
+
+    @Benchmark
+    public double lazyStream() {
+        return new MidpointDisplacement.LazyHeightMap(iterations, i -> Math.pow(0.5, i), multiplicative, 42).stream()
+                .sum();
+    }
+}
@@ -0,0 +1,103 @@
+package simple;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongToDoubleFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * In the simple package so Perlin1D (which is package private) can be
+ * reached.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PerlinBenchmark {
+    private static final LongToDoubleFunction SLOPE_GENERATOR = seed -> MathUtils.random(seed, -2, 2);
+    private static final DoubleUnaryOperator FADE_FUNCTION = x -> x * x * x * (x * (6 * x - 15) + 10);
+
+    private double step = 0;
+
+    @State(Scope.Thread)
+    public static class Point {
+        @Param({ "1", "2", "3", "4" })
+        public int dimensions;
+
+        public double[] point;
+        private double step = 0;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            point = new double[dimensions];
+        }
+
+        public double[] next() {
+            // walk along a diagonal so every call lands somewhere new in its cell
+            step += 0.173;
+            for (int i = 0; i < dimensions; i++) {
+                point[i] = 10 + step * (i + 1);
+            }
+            return point;
+        }
+    }
+
+    @Benchmark
+    public double perlin(Point point) {
+        return Perlin.perlin(point.next());
+    }
+
+    @Benchmark
+    public double cubicPerlin() {
+        step += 0.173;
+        return Perlin1D.cubicPerlin(step, SLOPE_GENERATOR);
+    }
+
+    @Benchmark
+    public double fadePerlin() {
+        step += 0.173;
+        return Perlin1D.fadePerlin(step, SLOPE_GENERATOR, FADE_FUNCTION);
+    }
+
+    @State(Scope.Thread)
+    public static class Grid {
+        @Param({ "256" })
+        public int size;
+
+        public double[] out;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            out = new double[size * size];
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double[] fill(Grid grid) {
+        Perlin.fill(grid.out, grid.size, grid.size, 10, 10, 0.05, 0.05);
+        return grid.out;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+    public double[] fillVector(Grid grid) {
+        VectorPerlin.fill(grid.out, grid.size, grid.size, 10, 10, 0.05, 0.05);
+        return grid.out;
+    }
+}
@@ -0,0 +1,87 @@
+package simple;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleToIntFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simple.Canvas.ColorGradient;
+import simple.Canvas.ColorMap;
+import simple.Canvas.PixelGrid;
+import simple.HeightMap.Precision;
+
+/**
+ * Everything is drawn into a BufferedImage, so no window is ever opened.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RenderBenchmark {
+    @Param({ "257", "1025" })
+    public int size;
+
+    private HeightMap heightMap;
+    private DoubleToIntFunction gradient;
+    private ColorMap colorMap;
+    private int[] argb;
+    private BufferedImage target;
+    private Graphics2D graphics;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        heightMap = DiamondSquare.generateHeightMap(Integer.numberOfTrailingZeros(size - 1), 1, 0.5, 42,
+                Precision.DOUBLE, null);
+        gradient = ColorGradient.createTerrainStyleGradient();
+        colorMap = new ColorMap((x, y) -> MathUtils.mapToRange(Perlin.perlin2(x, y), -1, 1, 0, 1), size, size, 0,
+                8, 0, 8, gradient);
+        argb = new int[size * size];
+        target = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        graphics = target.createGraphics();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public PixelGrid pixelGrid() {
+        return new PixelGrid(heightMap, 0, 0, size, size, gradient);
+    }
+
+    @Benchmark
+    public BufferedImage pixelGridPaint() {
+        new PixelGrid(heightMap, 0, 0, size, size, gradient).paintOnTo(graphics);
+        return target;
+    }
+
+    @Benchmark
+    public int[] colorMapRender() {
+        colorMap.renderInto(argb);
+        return argb;
+    }
+
+    @Benchmark
+    public BufferedImage colorMapPaint() {
+        colorMap.invalidate();
+        colorMap.paintOnTo(graphics);
+        return target;
+    }
+}
@@ -8,7 +8,8 @@ import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.DoubleToIntFunction;
 import java.util.function.DoubleUnaryOperator;
 import java.util.logging.Logger;
@@ -144,7 +145,10 @@ public class Canvas extends JPanel {
 
     public static class PixelGrid implements Shape {
         private final int x, y, displayWidth, displayHeight;
-        private final int[][] rgbValues;
+        // the colors are written straight into the image's buffer once, so painting
+        // is just drawing the image
+        private final BufferedImage image;
+        private final int[] argb;
 
         public static int coloredRGBGenerator(double height) {
             if (height < 0) {
@@ -162,42 +166,76 @@ public class Canvas extends JPanel {
             }
         }
 
+        public static int grayscaleRGBGenerator(double height) {
+            return Color.HSBtoRGB(0, 0, (float) Math.max(0, Math.min(1, height)));
+        }
+
         public PixelGrid(double[][] heightMap, int x, int y, int displayWidth, int displayHeight,
                 DoubleToIntFunction heightToRGBFunction) {
+            this(heightMap[0].length, heightMap.length, x, y, displayWidth, displayHeight);
+
             if (heightToRGBFunction == null) {
-                heightToRGBFunction = (height) -> Color.HSBtoRGB(0, 0,
-                        (float) Math.max(0, Math.min(1, height)));
+                heightToRGBFunction = PixelGrid::grayscaleRGBGenerator;
             }
 
-            this.rgbValues = new int[heightMap.length][heightMap[0].length];
+            int width = image.getWidth();
             for (int row = 0; row < heightMap.length; row++) {
-                for (int col = 0; col < heightMap[0].length; col++) {
-                    this.rgbValues[row][col] = heightToRGBFunction.applyAsInt(heightMap[row][col]);
+                for (int col = 0; col < width; col++) {
+                    argb[row * width + col] = heightToRGBFunction.applyAsInt(heightMap[row][col]);
+                }
+            }
+        }
+
+        public PixelGrid(HeightMap heightMap, int x, int y, int displayWidth, int displayHeight,
+                DoubleToIntFunction heightToRGBFunction) {
+            this(heightMap.getWidth(), heightMap.getHeight(), x, y, displayWidth, displayHeight);
+
+            if (heightToRGBFunction == null) {
+                heightToRGBFunction = PixelGrid::grayscaleRGBGenerator;
+            }
+
+            int width = heightMap.getWidth();
+            for (int row = 0; row < heightMap.getHeight(); row++) {
+                for (int col = 0; col < width; col++) {
+                    argb[row * width + col] = heightToRGBFunction.applyAsInt(heightMap.get(row, col));
                 }
             }
-            this.x = x;
-            this.y = y;
-            this.displayWidth = displayWidth;
-            this.displayHeight = displayHeight;
         }
 
         public PixelGrid(int[][] rgbValues, int x, int y, int displayWidth, int displayHeight) {
-            this.rgbValues = rgbValues;
+            this(rgbValues[0].length, rgbValues.length, x, y, displayWidth, displayHeight);
+
+            int width = image.getWidth();
+            for (int row = 0; row < rgbValues.length; row++) {
+                System.arraycopy(rgbValues[row], 0, argb, row * width, width);
+            }
+        }
+
+        /**
+         * An empty (transparent) grid. Its pixels can be written through getARGB.
+         */
+        public PixelGrid(int width, int height, int x, int y, int displayWidth, int displayHeight) {
+            this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            this.argb = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
             this.x = x;
             this.y = y;
             this.displayWidth = displayWidth;
             this.displayHeight = displayHeight;
         }
 
-        @Override
-        public void paintOnTo(Graphics g) {
-            BufferedImage image = new BufferedImage(rgbValues[0].length, rgbValues.length, BufferedImage.TYPE_INT_ARGB);
-
-            int[] flattenedRgbValue = Arrays.stream(rgbValues).flatMapToInt(Arrays::stream).toArray();
-            int[] imageData = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        /**
+         * The image's own pixel buffer, row major. Changes show up on the next paint.
+         */
+        public int[] getARGB() {
+            return argb;
+        }
 
-            System.arraycopy(flattenedRgbValue, 0, imageData, 0, flattenedRgbValue.length);
+        public BufferedImage getImage() {
+            return image;
+        }
 
+        @Override
+        public void paintOnTo(Graphics g) {
             g.drawImage(image, x, y, displayWidth, displayHeight, null);
         }
     }
@@ -256,11 +294,20 @@ public class Canvas extends JPanel {
             public double apply(double x, double y);
         }
 
-        private final int displayWidth, displayHeight;
-        private final double viewXStart,
+        /**
+         * Bands smaller than this aren't worth splitting between threads.
+         */
+        private static final int ROWS_PER_TASK = 16;
+
+        private int displayWidth, displayHeight;
+        private double viewXStart,
                 viewXEnd, viewYStart, viewYEnd;
         private TwoDimensionToOneDimensionFunction function;
         private DoubleToIntFunction heightToRGBFunction;
+        private ForkJoinPool pool = null;
+
+        // rendered on the first paint, and only again after something changes
+        private BufferedImage cachedImage = null;
 
         public ColorMap(TwoDimensionToOneDimensionFunction function, int displayWidth, int displayHeight,
                 double viewXStart, double viewXEnd, double viewYStart, double viewYEnd,
@@ -272,22 +319,113 @@ public class Canvas extends JPanel {
             this.viewYStart = viewYStart;
             this.viewYEnd = viewYEnd;
             this.function = function;
-            this.heightToRGBFunction = heightToRGBFunction;
+            this.heightToRGBFunction = heightToRGBFunction == null ? PixelGrid::grayscaleRGBGenerator
+                    : heightToRGBFunction;
         }
 
-        @Override
-        public void paintOnTo(Graphics g) {
-            double[][] heightMap = new double[displayHeight][displayWidth];
+        public void setFunction(TwoDimensionToOneDimensionFunction function) {
+            this.function = function;
+            invalidate();
+        }
 
-            for (int y = 0; y < heightMap.length; y++) {
-                for (int x = 0; x < heightMap[0].length; x++) {
-                    heightMap[y][x] = function.apply(
-                            MathUtils.mapToRange(x, 0, heightMap[0].length, viewXStart, viewXEnd),
-                            MathUtils.mapToRange(y, 0, heightMap.length, viewYEnd, viewYStart));
+        public void setHeightToRGBFunction(DoubleToIntFunction heightToRGBFunction) {
+            this.heightToRGBFunction = heightToRGBFunction == null ? PixelGrid::grayscaleRGBGenerator
+                    : heightToRGBFunction;
+            invalidate();
+        }
+
+        public void setView(double viewXStart, double viewXEnd, double viewYStart, double viewYEnd) {
+            this.viewXStart = viewXStart;
+            this.viewXEnd = viewXEnd;
+            this.viewYStart = viewYStart;
+            this.viewYEnd = viewYEnd;
+            invalidate();
+        }
+
+        public void setDisplaySize(int displayWidth, int displayHeight) {
+            this.displayWidth = displayWidth;
+            this.displayHeight = displayHeight;
+            invalidate();
+        }
+
+        /**
+         * Throws away the rendered image so the next paint renders it again. The
+         * setters already do this, so it is only needed when the function or
+         * gradient change on their own (like when they read some outside state).
+         */
+        public void invalidate() {
+            cachedImage = null;
+        }
+
+        /**
+         * With a pool, the rows are split into bands that are evaluated on it, so
+         * the function and the color gradient have to be safe to call from several
+         * threads. Without one (the default), everything runs on the calling
+         * thread, which is usually the Swing paint thread.
+         */
+        public void setPool(ForkJoinPool pool) {
+            this.pool = pool;
+        }
+
+        /**
+         * Fills argb (row major, displayWidth by displayHeight) with the colors of
+         * the function over the view.
+         */
+        public void renderInto(int[] argb) {
+            if (pool == null) {
+                renderRows(argb, 0, displayHeight);
+            } else {
+                pool.invoke(new RenderRowsAction(argb, 0, displayHeight));
+            }
+        }
+
+        private void renderRows(int[] argb, int rowStart, int rowEnd) {
+            for (int y = rowStart; y < rowEnd; y++) {
+                double viewY = MathUtils.mapToRange(y, 0, displayHeight, viewYEnd, viewYStart);
+
+                for (int x = 0; x < displayWidth; x++) {
+                    double height = function.apply(
+                            MathUtils.mapToRange(x, 0, displayWidth, viewXStart, viewXEnd), viewY);
+                    argb[y * displayWidth + x] = heightToRGBFunction.applyAsInt(height);
+                }
+            }
+        }
+
+        private class RenderRowsAction extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final int[] argb;
+            private final int rowStart, rowEnd;
+
+            private RenderRowsAction(int[] argb, int rowStart, int rowEnd) {
+                this.argb = argb;
+                this.rowStart = rowStart;
+                this.rowEnd = rowEnd;
+            }
+
+            @Override
+            protected void compute() {
+                if (rowEnd - rowStart <= ROWS_PER_TASK) {
+                    renderRows(argb, rowStart, rowEnd);
+                } else {
+                    int rowMiddle = (rowStart + rowEnd) >>> 1;
+                    invokeAll(new RenderRowsAction(argb, rowStart, rowMiddle),
+                            new RenderRowsAction(argb, rowMiddle, rowEnd));
                 }
             }
+        }
+
+        @Override
+        public void paintOnTo(Graphics g) {
+            if (cachedImage == null) {
+                // writing straight into the image's own buffer skips the double[][] and
+                // int[][] that going through PixelGrid would need
+                BufferedImage image = new BufferedImage(displayWidth, displayHeight, BufferedImage.TYPE_INT_ARGB);
+                renderInto(((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+                cachedImage = image;
+            }
 
-            new PixelGrid(heightMap, 0, 0, displayHeight, displayWidth, heightToRGBFunction).paintOnTo(g);
+            g.drawImage(cachedImage, 0, 0, null);
         }
     }
 
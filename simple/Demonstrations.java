@@ -25,6 +25,9 @@ public class Demonstrations {
             Perlin::slopeInterpolationDemo1D,
             Perlin::perlinNoiseDemo1D,
             Perlin::perlinNoiseDemo2D,
+
+            // Fractal Noise
+            FractalNoise::fractalNoiseDemo,
     };
 
     public static void everythingDemonstration() {
@@ -5,11 +5,19 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntPredicate;
 
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -21,178 +29,836 @@ import simple.Canvas.ColorGradient;
 import simple.Canvas.PixelGrid;
 
 public class DiamondSquare {
+    /**
+     * For the editor, which keeps everything on the heap. Maps made with
+     * HeightMap.Storage.OFF_HEAP can be much bigger.
+     */
     public static final int RECOMMENDED_MAX_DEFINITION = 1024;
 
-    public static double[][] generateHeightMap(int sizeFactor, double initialRandomness, double roughnessFactor) {
-        double[][] heightMap = new double[(int) Math.pow(2, sizeFactor) + 1][(int) Math.pow(2, sizeFactor) + 1];
-        heightMap[0][0] = Math.random();
-        heightMap[0][heightMap.length - 1] = Math.random();
-        heightMap[heightMap.length - 1][0] = Math.random();
-        heightMap[heightMap.length - 1][heightMap.length - 1] = Math.random();
+    /**
+     * Where a map sits in a bigger world. Row r of the map is world row
+     * originRow + r * scale (and the same for columns). The random numbers are
+     * hashes of world coordinates, so two maps that share some world points give
+     * them the same heights.
+     * 
+     * When seamless, points on the border of the map only average the two border
+     * points next to them, so a border only depends on itself and the map on the
+     * other side of it gets exactly the same values.
+     */
+    private static class Placement {
+        private static final Placement ALONE = new Placement(0, 0, 1, false);
+
+        private final long originRow, originCol, scale;
+        private final boolean seamless;
+
+        private Placement(long originRow, long originCol, long scale, boolean seamless) {
+            this.originRow = originRow;
+            this.originCol = originCol;
+            this.scale = scale;
+            this.seamless = seamless;
+        }
 
-        recurSquareStep(heightMap, heightMap.length - 1, initialRandomness, roughnessFactor);
-        return heightMap;
+        private long hash(long seed, int level, int row, int col) {
+            return MathUtils.hash(seed, level, originRow + row * scale, originCol + col * scale);
+        }
     }
 
     /**
-     * @param heightMap
-     * @param rowMin            inclusive
-     * @param colMin            inclusive
-     * @param rowMax            inclusive
-     * @param colMax            inclusive
-     * @param currentRandomness
-     * @param roughnessFactor
+     * Runs diamond square one level at a time. A level is one square step and one
+     * diamond step, and halves the distance between the filled in points. The
+     * randomness of every level is worked out up front.
+     * 
+     * Every random number is a hash of (seed, level, row, col), so no point
+     * depends on the order the others were made in. That lets each step be split
+     * between the threads of a pool, and the map is the same whether or not it
+     * is.
+     * 
+     * The generator can be stopped after any level (with runToLevel, or by
+     * returning false from the predicate given to run) and picked up again later
+     * with the same generator, or with a new one made from the partly generated
+     * map.
      */
-    private static void recurSquareStep(double[][] heightMap, int stepSize, double currentRandomness,
-            double roughnessFactor) {
-        if (stepSize <= 1) {
-            return;
+    public static class Generator {
+        private final HeightMap heightMap;
+        private final long seed;
+        private final int sizeFactor;
+        private final double[] randomnessPerLevel;
+        private final Placement placement;
+        private int completedLevels;
+        private ForkJoinPool pool = null;
+
+        public Generator(int sizeFactor, double initialRandomness, double roughnessFactor, long seed,
+                HeightMap.Precision precision) {
+            this(sizeFactor, initialRandomness, roughnessFactor, seed, precision, HeightMap.Storage.HEAP);
+        }
+
+        public Generator(int sizeFactor, double initialRandomness, double roughnessFactor, long seed,
+                HeightMap.Precision precision, HeightMap.Storage storage) {
+            this(createWithCorners((1 << sizeFactor) + 1, seed, precision, storage, Placement.ALONE), 0,
+                    initialRandomness, roughnessFactor, seed, Placement.ALONE);
         }
 
-        int halfSize = stepSize / 2;
+        /**
+         * Resumes from a map that already has completedLevels levels done (0 means
+         * only the corners are filled in).
+         * 
+         * @param heightMap a square map that is 2^n + 1 wide
+         */
+        public Generator(HeightMap heightMap, int completedLevels, double initialRandomness,
+                double roughnessFactor, long seed) {
+            this(heightMap, completedLevels, initialRandomness, roughnessFactor, seed, Placement.ALONE);
+        }
+
+        private Generator(HeightMap heightMap, int completedLevels, double initialRandomness,
+                double roughnessFactor, long seed, Placement placement) {
+            int size = heightMap.getWidth();
+            if (heightMap.getHeight() != size || size < 2 || Integer.bitCount(size - 1) != 1) {
+                throw new IllegalArgumentException("Diamond square needs a square map that is 2^n + 1 wide, not "
+                        + heightMap.getWidth() + "x" + heightMap.getHeight() + ".");
+            }
+
+            this.heightMap = heightMap;
+            this.seed = seed;
+            this.placement = placement;
+            this.sizeFactor = Integer.numberOfTrailingZeros(size - 1);
 
-        for (int row = halfSize; row < heightMap.length; row += stepSize) {
-            for (int col = halfSize; col < heightMap[0].length; col += stepSize) {
-                double average = (heightMap[row - halfSize][col - halfSize] + heightMap[row - halfSize][col + halfSize]
-                        + heightMap[row + halfSize][col - halfSize] + heightMap[row + halfSize][col + halfSize]) / 4;
+            if (completedLevels < 0 || completedLevels > sizeFactor) {
+                throw new IllegalArgumentException(
+                        "Level " + completedLevels + " is not between 0 and " + sizeFactor + ".");
+            }
+            this.completedLevels = completedLevels;
 
-                heightMap[row][col] = MathUtils.mapToRange(
-                        Math.random(), 0, 1, average - currentRandomness, average + currentRandomness);
-                heightMap[row][col] = average;
+            randomnessPerLevel = new double[sizeFactor];
+            double currentRandomness = initialRandomness;
+            for (int level = 0; level < sizeFactor; level++) {
+                randomnessPerLevel[level] = currentRandomness;
+                currentRandomness *= roughnessFactor;
             }
         }
 
-        recurDiamondStep(heightMap, stepSize, currentRandomness, roughnessFactor);
+        private static HeightMap createWithCorners(int size, long seed, HeightMap.Precision precision,
+                HeightMap.Storage storage, Placement placement) {
+            HeightMap heightMap = HeightMap.create(size, size, precision, storage);
+            heightMap.set(0, 0, seededCorner(seed, placement, 0, 0));
+            heightMap.set(0, size - 1, seededCorner(seed, placement, 0, size - 1));
+            heightMap.set(size - 1, 0, seededCorner(seed, placement, size - 1, 0));
+            heightMap.set(size - 1, size - 1, seededCorner(seed, placement, size - 1, size - 1));
+            return heightMap;
+        }
+
+        /**
+         * @param pool where to run the steps, or null (the default) to run them on
+         *             the calling thread
+         */
+        public Generator setPool(ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        public HeightMap getHeightMap() {
+            return heightMap;
+        }
+
+        public int getCompletedLevels() {
+            return completedLevels;
+        }
+
+        public int getLevelCount() {
+            return sizeFactor;
+        }
+
+        public boolean isComplete() {
+            return completedLevels == sizeFactor;
+        }
+
+        /**
+         * Runs the next level.
+         * 
+         * @return false if there wasn't one
+         */
+        public boolean step() {
+            if (isComplete()) {
+                return false;
+            }
+
+            int level = completedLevels;
+            int halfSize = (heightMap.getWidth() - 1) >> (level + 1);
+
+            runLevelPass(heightMap, seed, placement, level, halfSize, randomnessPerLevel[level], true, pool);
+            runLevelPass(heightMap, seed, placement, level, halfSize, randomnessPerLevel[level], false, pool);
+
+            completedLevels++;
+            return true;
+        }
+
+        /**
+         * Runs levels until level of them are done. Does nothing if that many are
+         * already done.
+         */
+        public HeightMap runToLevel(int level) {
+            while (completedLevels < Math.min(level, sizeFactor)) {
+                step();
+            }
+            return heightMap;
+        }
+
+        public HeightMap run() {
+            return runToLevel(sizeFactor);
+        }
+
+        /**
+         * Runs the remaining levels, asking shouldContinue with the number of
+         * completed levels after each one. Returning false stops it there, which is
+         * how a long generation can report progress or be cancelled.
+         */
+        public HeightMap run(IntPredicate shouldContinue) {
+            while (step()) {
+                if (!shouldContinue.test(completedLevels)) {
+                    break;
+                }
+            }
+            return heightMap;
+        }
     }
 
-    private static void recurDiamondStep(double[][] heightMap, int stepSize, double currentRandomness,
-            double roughnessFactor) {
-        if (stepSize <= 1) {
-            return;
+    public static HeightMap generateHeightMap(int sizeFactor, double initialRandomness, double roughnessFactor) {
+        return generateHeightMap(sizeFactor, initialRandomness, roughnessFactor, HeightMap.Precision.DOUBLE);
+    }
+
+    /**
+     * Like the seeded generateHeightMap, with a new random seed every time.
+     * 
+     * @param precision FLOAT halves the memory, see HeightMap.Precision for how
+     *                  far off it can be
+     */
+    public static HeightMap generateHeightMap(int sizeFactor, double initialRandomness, double roughnessFactor,
+            HeightMap.Precision precision) {
+        return generateHeightMap(sizeFactor, initialRandomness, roughnessFactor,
+                ThreadLocalRandom.current().nextLong(), precision, null);
+    }
+
+    /**
+     * The same seed always gives the same map. See Generator.
+     * 
+     * @param pool where to run the steps, or null to run them on this thread
+     */
+    public static HeightMap generateHeightMap(int sizeFactor, double initialRandomness, double roughnessFactor,
+            long seed, HeightMap.Precision precision, ForkJoinPool pool) {
+        return new Generator(sizeFactor, initialRandomness, roughnessFactor, seed, precision).setPool(pool).run();
+    }
+
+    /**
+     * @param storage OFF_HEAP for maps too big for the heap (a size factor of 15
+     *                is 8GB of doubles)
+     */
+    public static HeightMap generateHeightMap(int sizeFactor, double initialRandomness, double roughnessFactor,
+            long seed, HeightMap.Precision precision, HeightMap.Storage storage, ForkJoinPool pool) {
+        return new Generator(sizeFactor, initialRandomness, roughnessFactor, seed, precision, storage)
+                .setPool(pool).run();
+    }
+
+    public static HeightMap generateHeightMap(int sizeFactor, double initialRandomness, double roughnessFactor,
+            long seed) {
+        return generateHeightMap(sizeFactor, initialRandomness, roughnessFactor, seed, HeightMap.Precision.DOUBLE,
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * An endless diamond square world made of square chunks that are each
+     * 2^chunkSizeFactor + 1 points wide. Any chunk can be made on its own, and
+     * chunks next to each other have exactly the same heights along the border
+     * they share, so only the chunks that are needed have to be made.
+     * 
+     * Chunks can also be made at a lower level of detail, which skips the last
+     * levels of diamond square. A chunk at level of detail n has every 2^n-th
+     * point of the full chunk, with exactly the same heights.
+     */
+    public static class World {
+        private final long seed;
+        private final int chunkSizeFactor;
+        private final double initialRandomness, roughnessFactor;
+        private final HeightMap.Precision precision;
+        private TileCache cache = null;
+
+        public World(long seed, int chunkSizeFactor, double initialRandomness, double roughnessFactor,
+                HeightMap.Precision precision) {
+            if (chunkSizeFactor < 1 || chunkSizeFactor > 30) {
+                throw new IllegalArgumentException("Chunk size factor " + chunkSizeFactor + " is not in [1, 30].");
+            }
+
+            this.seed = seed;
+            this.chunkSizeFactor = chunkSizeFactor;
+            this.initialRandomness = initialRandomness;
+            this.roughnessFactor = roughnessFactor;
+            this.precision = precision;
+        }
+
+        public int getChunkSizeFactor() {
+            return chunkSizeFactor;
+        }
+
+        /**
+         * With a cache, getChunk only generates each chunk (at each level of
+         * detail) once, until it is evicted. Worlds with different settings can
+         * share the same cache. The chunks it gives out are shared, so they
+         * shouldn't be changed.
+         */
+        public World setCache(TileCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        public HeightMap getChunk(long chunkRow, long chunkCol) {
+            return getChunk(chunkRow, chunkCol, 0);
+        }
+
+        /**
+         * @param levelOfDetail 0 is every point, and every step up halves the
+         *                      resolution, up to chunkSizeFactor (just the corners)
+         */
+        public HeightMap getChunk(long chunkRow, long chunkCol, int levelOfDetail) {
+            if (levelOfDetail < 0 || levelOfDetail > chunkSizeFactor) {
+                throw new IllegalArgumentException(
+                        "Level of detail " + levelOfDetail + " is not between 0 and " + chunkSizeFactor + ".");
+            }
+
+            if (cache != null) {
+                return cache.get(new TileCache.Key("diamond-square",
+                        new double[] { chunkSizeFactor, initialRandomness, roughnessFactor, precision.ordinal() },
+                        seed, chunkRow, chunkCol, levelOfDetail),
+                        () -> generateChunk(chunkRow, chunkCol, levelOfDetail));
+            }
+            return generateChunk(chunkRow, chunkCol, levelOfDetail);
+        }
+
+        private HeightMap generateChunk(long chunkRow, long chunkCol, int levelOfDetail) {
+            long chunkSize = 1L << chunkSizeFactor;
+            Placement placement = new Placement(chunkRow * chunkSize, chunkCol * chunkSize, 1L << levelOfDetail,
+                    true);
+
+            int size = (1 << (chunkSizeFactor - levelOfDetail)) + 1;
+            HeightMap chunk = Generator.createWithCorners(size, seed, precision, HeightMap.Storage.HEAP, placement);
+
+            // the levels that are left out are the last ones, so the ones that are run
+            // have the same numbers and randomness as in the full chunk
+            return new Generator(chunk, 0, initialRandomness, roughnessFactor, seed, placement).run();
+        }
+    }
+
+    private static double seededCorner(long seed, Placement placement, int row, int col) {
+        // level -1 since the corners come before the first level
+        return MathUtils.hashToDouble(placement.hash(seed, -1, row, col), 0, 1);
+    }
+
+    /**
+     * Tasks smaller than this aren't worth splitting between threads.
+     */
+    private static final int MIN_POINTS_PER_TASK = 1 << 14;
+
+    /**
+     * Runs the square step or the diamond step for the points halfSize away from
+     * the ones that are already filled in. Works for any map with odd sides, not
+     * just 2^n + 1.
+     */
+    private static void runLevelPass(HeightMap heightMap, long seed, Placement placement, int level, int halfSize,
+            double currentRandomness, boolean isSquareStep, ForkJoinPool pool) {
+        // the square step fills every other row of halfSize, the diamond step fills
+        // all of them
+        int rows = isSquareStep ? (heightMap.getHeight() - 1) / (2 * halfSize)
+                : (heightMap.getHeight() - 1) / halfSize + 1;
+
+        if (pool == null) {
+            // not through LevelPassAction, which would fork onto the common pool
+            runRows(heightMap, seed, placement, level, halfSize, currentRandomness, isSquareStep, 0, rows);
+        } else {
+            pool.invoke(new LevelPassAction(heightMap, seed, placement, level, halfSize, currentRandomness,
+                    isSquareStep, 0, rows));
         }
+    }
+
+    private static void runRows(HeightMap heightMap, long seed, Placement placement, int level, int halfSize,
+            double currentRandomness, boolean isSquareStep, int rowIndexStart, int rowIndexEnd) {
+        // the arrays are used directly when there are any, so the loops don't go
+        // through get and set (which can't be inlined once several kinds of height
+        // map have been used)
+        for (int rowIndex = rowIndexStart; rowIndex < rowIndexEnd; rowIndex++) {
+            if (isSquareStep) {
+                int row = halfSize + rowIndex * 2 * halfSize;
+                if (heightMap instanceof HeightMap.Doubles doubles) {
+                    squareRow(doubles.getData(), doubles.getStride(), doubles.getWidth(), row, halfSize);
+                } else if (heightMap instanceof HeightMap.Floats floats) {
+                    squareRow(floats.getData(), floats.getStride(), floats.getWidth(), row, halfSize);
+                } else {
+                    squareRow(heightMap, row, halfSize);
+                }
+            } else {
+                int row = rowIndex * halfSize;
+                if (heightMap instanceof HeightMap.Doubles doubles) {
+                    diamondRow(doubles.getData(), doubles.getStride(), doubles.getWidth(), doubles.getHeight(), seed,
+                            placement, level, row, halfSize, currentRandomness);
+                } else if (heightMap instanceof HeightMap.Floats floats) {
+                    diamondRow(floats.getData(), floats.getStride(), floats.getWidth(), floats.getHeight(), seed,
+                            placement, level, row, halfSize, currentRandomness);
+                } else {
+                    diamondRow(heightMap, seed, placement, level, row, halfSize, currentRandomness);
+                }
+            }
+        }
+    }
+
+    private static class LevelPassAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final HeightMap heightMap;
+        private final long seed;
+        private final Placement placement;
+        private final int level, halfSize;
+        private final double currentRandomness;
+        private final boolean isSquareStep;
+        private final int rowIndexStart, rowIndexEnd;
+
+        private LevelPassAction(HeightMap heightMap, long seed, Placement placement, int level, int halfSize,
+                double currentRandomness, boolean isSquareStep, int rowIndexStart, int rowIndexEnd) {
+            this.heightMap = heightMap;
+            this.seed = seed;
+            this.placement = placement;
+            this.level = level;
+            this.halfSize = halfSize;
+            this.currentRandomness = currentRandomness;
+            this.isSquareStep = isSquareStep;
+            this.rowIndexStart = rowIndexStart;
+            this.rowIndexEnd = rowIndexEnd;
+        }
+
+        @Override
+        protected void compute() {
+            int pointsPerRow = (heightMap.getWidth() - 1) / (2 * halfSize) + 1;
+
+            if ((long) (rowIndexEnd - rowIndexStart) * pointsPerRow > MIN_POINTS_PER_TASK
+                    && rowIndexEnd - rowIndexStart > 1) {
+                int rowIndexMiddle = (rowIndexStart + rowIndexEnd) >>> 1;
+                invokeAll(
+                        new LevelPassAction(heightMap, seed, placement, level, halfSize, currentRandomness,
+                                isSquareStep, rowIndexStart, rowIndexMiddle),
+                        new LevelPassAction(heightMap, seed, placement, level, halfSize, currentRandomness,
+                                isSquareStep, rowIndexMiddle, rowIndexEnd));
+                return;
+            }
+
+            runRows(heightMap, seed, placement, level, halfSize, currentRandomness, isSquareStep, rowIndexStart,
+                    rowIndexEnd);
+        }
+    }
+
+    private static void squareRow(HeightMap heightMap, int row, int halfSize) {
+        int stepSize = 2 * halfSize;
 
-        int halfSize = stepSize / 2;
+        for (int col = halfSize; col < heightMap.getWidth(); col += stepSize) {
+            double average = (heightMap.get(row - halfSize, col - halfSize)
+                    + heightMap.get(row - halfSize, col + halfSize)
+                    + heightMap.get(row + halfSize, col - halfSize)
+                    + heightMap.get(row + halfSize, col + halfSize)) / 4;
 
-        for (int row = halfSize; row < heightMap.length; row += stepSize) {
-            for (int col = 0; col < heightMap[0].length; col += stepSize) {
-                // changing rows are guranteed
-                // changing col is not
+            // the centers of the squares have always been left at the average
+            heightMap.set(row, col, average);
+        }
+    }
+
+    private static void diamondRow(HeightMap heightMap, long seed, Placement placement, int level, int row,
+            int halfSize, double currentRandomness) {
+        int stepSize = 2 * halfSize, height = heightMap.getHeight(), width = heightMap.getWidth();
+        boolean seamless = placement.seamless;
+
+        if (row % stepSize != 0) {
+            // between two rows of corners, so the points are above and below corners
+            for (int col = 0; col < width; col += stepSize) {
+                int numNear = 2;
+                double sum = heightMap.get(row - halfSize, col) + heightMap.get(row + halfSize, col);
+                // on a left or right border, stick to the border when seamless
+                if (col - halfSize >= 0 && !(seamless && col + halfSize >= width)) {
+                    sum += heightMap.get(row, col - halfSize);
+                    numNear++;
+                }
+                if (col + halfSize < width && !(seamless && col - halfSize < 0)) {
+                    sum += heightMap.get(row, col + halfSize);
+                    numNear++;
+                }
+
+                double average = sum / numNear;
+
+                heightMap.set(row, col, MathUtils.hashToDouble(placement.hash(seed, level, row, col),
+                        average - currentRandomness, average + currentRandomness));
+            }
+        } else {
+            // a row of corners, so the points are between corners
+            for (int col = halfSize; col < width; col += stepSize) {
                 int numNear = 2;
-                double sum = heightMap[row - halfSize][col] + heightMap[row + halfSize][col];
-                if (col - halfSize >= 0) {
-                    sum += heightMap[row][col - halfSize];
+                double sum = heightMap.get(row, col - halfSize) + heightMap.get(row, col + halfSize);
+                // on a top or bottom border, stick to the border when seamless
+                if (row - halfSize >= 0 && !(seamless && row + halfSize >= height)) {
+                    sum += heightMap.get(row - halfSize, col);
                     numNear++;
                 }
-                if (col + halfSize < heightMap.length) {
-                    sum += heightMap[row][col + halfSize];
+                if (row + halfSize < height && !(seamless && row - halfSize < 0)) {
+                    sum += heightMap.get(row + halfSize, col);
                     numNear++;
                 }
 
                 double average = sum / numNear;
 
-                heightMap[row][col] = MathUtils.mapToRange(
-                        Math.random(), 0, 1, average - currentRandomness, average + currentRandomness);
+                heightMap.set(row, col, MathUtils.hashToDouble(placement.hash(seed, level, row, col),
+                        average - currentRandomness, average + currentRandomness));
             }
         }
+    }
 
-        for (int row = 0; row < heightMap.length; row += stepSize) {
-            for (int col = halfSize; col < heightMap[0].length; col += stepSize) {
-                // changing col is guranteed
-                // changing row is not
+    /**
+     * squareRow for HeightMap.Doubles' array.
+     */
+    private static void squareRow(double[] data, int stride, int width, int row, int halfSize) {
+        int stepSize = 2 * halfSize;
+        int above = (row - halfSize) * stride, here = row * stride, below = (row + halfSize) * stride;
+
+        for (int col = halfSize; col < width; col += stepSize) {
+            data[here + col] = (data[above + col - halfSize] + data[above + col + halfSize]
+                    + data[below + col - halfSize] + data[below + col + halfSize]) / 4;
+        }
+    }
+
+    /**
+     * squareRow for HeightMap.Floats' array. The sums are still done in doubles,
+     * like through get.
+     */
+    private static void squareRow(float[] data, int stride, int width, int row, int halfSize) {
+        int stepSize = 2 * halfSize;
+        int above = (row - halfSize) * stride, here = row * stride, below = (row + halfSize) * stride;
+
+        for (int col = halfSize; col < width; col += stepSize) {
+            data[here + col] = (float) (((double) data[above + col - halfSize] + data[above + col + halfSize]
+                    + data[below + col - halfSize] + data[below + col + halfSize]) / 4);
+        }
+    }
+
+    /**
+     * diamondRow for HeightMap.Doubles' array.
+     */
+    private static void diamondRow(double[] data, int stride, int width, int height, long seed,
+            Placement placement, int level, int row, int halfSize, double currentRandomness) {
+        int stepSize = 2 * halfSize, here = row * stride;
+        boolean seamless = placement.seamless;
+
+        if (row % stepSize != 0) {
+            int above = (row - halfSize) * stride, below = (row + halfSize) * stride;
+            for (int col = 0; col < width; col += stepSize) {
                 int numNear = 2;
-                double sum = heightMap[row][col - halfSize] + heightMap[row][col + halfSize];
-                if (row - halfSize >= 0) {
-                    sum += heightMap[row - halfSize][col];
+                double sum = data[above + col] + data[below + col];
+                if (col - halfSize >= 0 && !(seamless && col + halfSize >= width)) {
+                    sum += data[here + col - halfSize];
                     numNear++;
                 }
-                if (row + halfSize < heightMap.length) {
-                    sum += heightMap[row + halfSize][col];
+                if (col + halfSize < width && !(seamless && col - halfSize < 0)) {
+                    sum += data[here + col + halfSize];
                     numNear++;
                 }
 
                 double average = sum / numNear;
 
-                heightMap[row][col] = MathUtils.mapToRange(
-                        Math.random(), 0, 1, average - currentRandomness, average + currentRandomness);
+                data[here + col] = MathUtils.hashToDouble(placement.hash(seed, level, row, col),
+                        average - currentRandomness, average + currentRandomness);
+            }
+        } else {
+            boolean hasAbove = row - halfSize >= 0 && !(seamless && row + halfSize >= height);
+            boolean hasBelow = row + halfSize < height && !(seamless && row - halfSize < 0);
+            int above = (row - halfSize) * stride, below = (row + halfSize) * stride;
+            for (int col = halfSize; col < width; col += stepSize) {
+                int numNear = 2;
+                double sum = data[here + col - halfSize] + data[here + col + halfSize];
+                if (hasAbove) {
+                    sum += data[above + col];
+                    numNear++;
+                }
+                if (hasBelow) {
+                    sum += data[below + col];
+                    numNear++;
+                }
+
+                double average = sum / numNear;
+
+                data[here + col] = MathUtils.hashToDouble(placement.hash(seed, level, row, col),
+                        average - currentRandomness, average + currentRandomness);
             }
         }
+    }
+
+    /**
+     * diamondRow for HeightMap.Floats' array.
+     */
+    private static void diamondRow(float[] data, int stride, int width, int height, long seed,
+            Placement placement, int level, int row, int halfSize, double currentRandomness) {
+        int stepSize = 2 * halfSize, here = row * stride;
+        boolean seamless = placement.seamless;
+
+        if (row % stepSize != 0) {
+            int above = (row - halfSize) * stride, below = (row + halfSize) * stride;
+            for (int col = 0; col < width; col += stepSize) {
+                int numNear = 2;
+                double sum = (double) data[above + col] + data[below + col];
+                if (col - halfSize >= 0 && !(seamless && col + halfSize >= width)) {
+                    sum += data[here + col - halfSize];
+                    numNear++;
+                }
+                if (col + halfSize < width && !(seamless && col - halfSize < 0)) {
+                    sum += data[here + col + halfSize];
+                    numNear++;
+                }
+
+                double average = sum / numNear;
 
-        recurSquareStep(heightMap, halfSize, currentRandomness * roughnessFactor, roughnessFactor);
+                data[here + col] = (float) MathUtils.hashToDouble(placement.hash(seed, level, row, col),
+                        average - currentRandomness, average + currentRandomness);
+            }
+        } else {
+            boolean hasAbove = row - halfSize >= 0 && !(seamless && row + halfSize >= height);
+            boolean hasBelow = row + halfSize < height && !(seamless && row - halfSize < 0);
+            int above = (row - halfSize) * stride, below = (row + halfSize) * stride;
+            for (int col = halfSize; col < width; col += stepSize) {
+                int numNear = 2;
+                double sum = (double) data[here + col - halfSize] + data[here + col + halfSize];
+                if (hasAbove) {
+                    sum += data[above + col];
+                    numNear++;
+                }
+                if (hasBelow) {
+                    sum += data[below + col];
+                    numNear++;
+                }
+
+                double average = sum / numNear;
+
+                data[here + col] = (float) MathUtils.hashToDouble(placement.hash(seed, level, row, col),
+                        average - currentRandomness, average + currentRandomness);
+            }
+        }
     }
 
-    public static double[][] increaseDefinition(double[][] heightMap, double currentRandomness) {
-        // TODO: check non-square and even length works
+    /**
+     * The new map has the same precision and storage as heightMap.
+     */
+    public static HeightMap increaseDefinition(HeightMap heightMap, double currentRandomness) {
+        return increaseDefinition(heightMap,
+                heightMap.createSimilar(2 * heightMap.getWidth() - 1, 2 * heightMap.getHeight() - 1),
+                currentRandomness);
+    }
 
-        double[][] definedHeightMap = new double[2 * heightMap.length - 1][2 * heightMap[0].length - 1];
+    /**
+     * increaseDefinition without allocating. The result is written into buffer,
+     * which needs room for a (2 * width - 1) by (2 * height - 1) view (see
+     * HeightMap.createWithCapacity).
+     * 
+     * The buffer can be a different map, so that repeated calls can ping-pong
+     * between two buffers, or it can be heightMap itself (or a view of it with
+     * the same storage). The points are spread out starting from the last one, so
+     * nothing is overwritten before it is read.
+     * 
+     * @return the bigger view of buffer
+     */
+    public static HeightMap increaseDefinition(HeightMap heightMap, HeightMap buffer, double currentRandomness) {
+        int width = heightMap.getWidth(), height = heightMap.getHeight();
+        HeightMap definedHeightMap = buffer.view(2 * width - 1, 2 * height - 1);
 
-        for (int row = 0; row < heightMap.length; row++) {
-            for (int col = 0; col < heightMap.length; col++) {
-                definedHeightMap[2 * row][2 * col] = heightMap[row][col];
+        for (int row = height - 1; row >= 0; row--) {
+            for (int col = width - 1; col >= 0; col--) {
+                definedHeightMap.set(2 * row, 2 * col, heightMap.get(row, col));
             }
         }
 
-        squareStep: for (int row = 1; row < definedHeightMap.length; row += 2) {
-            for (int col = 1; col < definedHeightMap[0].length; col += 2) {
-                double average = (definedHeightMap[row - 1][col - 1] + definedHeightMap[row - 1][col + 1]
-                        + definedHeightMap[row + 1][col - 1] + definedHeightMap[row + 1][col + 1]) / 4;
+        // one more level of diamond square, with a new random seed every time. the
+        // passes overwrite every point between the spread out ones, so whatever was
+        // left there doesn't matter.
+        long seed = ThreadLocalRandom.current().nextLong();
+        runLevelPass(definedHeightMap, seed, Placement.ALONE, 0, 1, currentRandomness, true, null);
+        runLevelPass(definedHeightMap, seed, Placement.ALONE, 0, 1, currentRandomness, false, null);
 
-                definedHeightMap[row][col] = MathUtils.mapToRange(
-                        Math.random(), 0, 1, average - currentRandomness, average + currentRandomness);
-                definedHeightMap[row][col] = average;
+        return definedHeightMap;
+    }
+
+    /**
+     * Increases the definition times times, multiplying the randomness by
+     * roughnessFactor after each one. The final size is allocated once and every
+     * pass is done in place inside it.
+     */
+    public static HeightMap increaseDefinition(HeightMap heightMap, int times, double currentRandomness,
+            double roughnessFactor) {
+        int finalWidth = (heightMap.getWidth() - 1) * (1 << times) + 1,
+                finalHeight = (heightMap.getHeight() - 1) * (1 << times) + 1;
+
+        HeightMap definedHeightMap = HeightMap.createWithCapacity(heightMap.getWidth(), heightMap.getHeight(),
+                finalWidth, finalHeight, heightMap.getPrecision(), heightMap.getStorage());
+        for (int row = 0; row < heightMap.getHeight(); row++) {
+            for (int col = 0; col < heightMap.getWidth(); col++) {
+                definedHeightMap.set(row, col, heightMap.get(row, col));
             }
         }
 
-        diamondStep: {
-            for (int row = 1; row < definedHeightMap.length; row += 2) {
-                for (int col = 0; col < definedHeightMap[0].length; col += 2) {
-                    // changing rows are guranteed
-                    // changing col is not
-                    int numNear = 2;
-                    double sum = definedHeightMap[row - 1][col] + definedHeightMap[row + 1][col];
-                    if (col - 1 >= 0) {
-                        sum += definedHeightMap[row][col - 1];
-                        numNear++;
-                    }
-                    if (col + 1 < definedHeightMap.length) {
-                        sum += definedHeightMap[row][col + 1];
-                        numNear++;
-                    }
+        for (int i = 0; i < times; i++) {
+            definedHeightMap = increaseDefinition(definedHeightMap, definedHeightMap, currentRandomness);
+            currentRandomness *= roughnessFactor;
+        }
+
+        return definedHeightMap;
+    }
+
+    public static double[][] increaseDefinition(double[][] heightMap, double currentRandomness) {
+        return increaseDefinition(HeightMap.of(heightMap), currentRandomness).toArray();
+    }
 
-                    double average = sum / numNear;
+    /**
+     * Increases the definition of a map only where it is asked to, instead of
+     * everywhere like increaseDefinition.
+     * 
+     * Level 0 is the base map, and every level has twice the definition of the
+     * one before it. Each level above 0 is split into tiles that are TILE_SIZE
+     * points apart, and a tile is only made the first time something inside it
+     * is asked for. Making a tile first makes its parent (the tile on the level
+     * below that covers it) if that isn't there yet, so the tiles make a quadtree
+     * that only goes deep where it was refined.
+     * 
+     * Tiles are seamless and seeded (see World), so tiles next to each other
+     * agree on their borders no matter what order they were made in.
+     */
+    public static class RefinementTree {
+        public static final int TILE_SIZE = 64;
+
+        private final HeightMap base;
+        private final long seed;
+        private final double initialRandomness, roughnessFactor;
+        // levels.get(level - 1) has the tiles of that level, keyed by packTileKey
+        private final ArrayList<HashMap<Long, HeightMap>> levels = new ArrayList<>();
+
+        /**
+         * @param initialRandomness the randomness of level 1, every level after
+         *                          that has roughnessFactor times as much
+         */
+        public RefinementTree(HeightMap base, double initialRandomness, double roughnessFactor, long seed) {
+            this.base = base;
+            this.initialRandomness = initialRandomness;
+            this.roughnessFactor = roughnessFactor;
+            this.seed = seed;
+        }
+
+        public HeightMap getBase() {
+            return base;
+        }
+
+        /**
+         * The number of points between the first and last row at that level.
+         */
+        private long rowSpan(int level) {
+            return (long) (base.getHeight() - 1) << level;
+        }
+
+        private long colSpan(int level) {
+            return (long) (base.getWidth() - 1) << level;
+        }
+
+        private static long packTileKey(long tileRow, long tileCol) {
+            return (tileRow << 32) | (tileCol & 0xFFFFFFFFL);
+        }
+
+        /**
+         * @param row in the points of that level, so from 0 to (base height - 1) *
+         *            2^level
+         */
+        public double get(int level, long row, long col) {
+            if (level == 0) {
+                return base.get((int) row, (int) col);
+            }
+            if (row < 0 || col < 0 || row > rowSpan(level) || col > colSpan(level)) {
+                throw new IndexOutOfBoundsException(
+                        "(" + row + ", " + col + ") is outside of the map at level " + level + ".");
+            }
+
+            // points on a border between tiles are in both, so either one works
+            long tileRow = Math.min(row / TILE_SIZE, (rowSpan(level) - 1) / TILE_SIZE);
+            long tileCol = Math.min(col / TILE_SIZE, (colSpan(level) - 1) / TILE_SIZE);
+
+            return getTile(level, tileRow, tileCol).get((int) (row - tileRow * TILE_SIZE),
+                    (int) (col - tileCol * TILE_SIZE));
+        }
+
+        private HeightMap getTile(int level, long tileRow, long tileCol) {
+            while (levels.size() < level) {
+                levels.add(new HashMap<>());
+            }
+
+            HashMap<Long, HeightMap> tiles = levels.get(level - 1);
+            HeightMap tile = tiles.get(packTileKey(tileRow, tileCol));
+            if (tile == null) {
+                tile = createTile(level, tileRow, tileCol);
+                tiles.put(packTileKey(tileRow, tileCol), tile);
+            }
+            return tile;
+        }
 
-                    definedHeightMap[row][col] = MathUtils.mapToRange(
-                            Math.random(), 0, 1, average - currentRandomness, average + currentRandomness);
+        private HeightMap createTile(int level, long tileRow, long tileCol) {
+            long originRow = tileRow * TILE_SIZE, originCol = tileCol * TILE_SIZE;
+            // tiles at the bottom and right of the map can be cut short, but always
+            // by an even amount since the spans are even above level 0
+            int height = (int) Math.min(TILE_SIZE, rowSpan(level) - originRow) + 1;
+            int width = (int) Math.min(TILE_SIZE, colSpan(level) - originCol) + 1;
+
+            HeightMap tile = HeightMap.create(width, height, base.getPrecision());
+            for (int row = 0; row < height; row += 2) {
+                for (int col = 0; col < width; col += 2) {
+                    tile.set(row, col, get(level - 1, (originRow + row) / 2, (originCol + col) / 2));
                 }
             }
 
-            for (int row = 0; row < definedHeightMap.length; row += 2) {
-                for (int col = 1; col < definedHeightMap[0].length; col += 2) {
-                    // changing col is guranteed
-                    // changing row is not
-                    int numNear = 2;
-                    double sum = definedHeightMap[row][col - 1] + definedHeightMap[row][col + 1];
-                    if (row - 1 >= 0) {
-                        sum += definedHeightMap[row - 1][col];
-                        numNear++;
-                    }
-                    if (row + 1 < definedHeightMap.length) {
-                        sum += definedHeightMap[row + 1][col];
-                        numNear++;
-                    }
+            Placement placement = new Placement(originRow, originCol, 1, true);
+            double randomness = initialRandomness * Math.pow(roughnessFactor, level - 1);
+            runLevelPass(tile, seed, placement, level, 1, randomness, true, null);
+            runLevelPass(tile, seed, placement, level, 1, randomness, false, null);
+
+            return tile;
+        }
 
-                    double average = sum / numNear;
+        /**
+         * Refines (if needed) and copies out a rectangle of the map at a level.
+         * 
+         * @param rowStart inclusive, in rows of the base map
+         * @param rowEnd   inclusive, in rows of the base map
+         */
+        public HeightMap sample(double rowStart, double colStart, double rowEnd, double colEnd, int level) {
+            double scale = Math.pow(2, level);
+            long firstRow = Math.max(0, (long) Math.ceil(rowStart * scale)),
+                    lastRow = Math.min(rowSpan(level), (long) Math.floor(rowEnd * scale)),
+                    firstCol = Math.max(0, (long) Math.ceil(colStart * scale)),
+                    lastCol = Math.min(colSpan(level), (long) Math.floor(colEnd * scale));
+            if (firstRow > lastRow || firstCol > lastCol) {
+                throw new IllegalArgumentException("The region is empty at level " + level + ".");
+            }
 
-                    definedHeightMap[row][col] = MathUtils.mapToRange(
-                            Math.random(), 0, 1, average - currentRandomness, average + currentRandomness);
+            HeightMap region = HeightMap.create((int) (lastCol - firstCol + 1), (int) (lastRow - firstRow + 1),
+                    base.getPrecision());
+            for (int row = 0; row < region.getHeight(); row++) {
+                for (int col = 0; col < region.getWidth(); col++) {
+                    region.set(row, col, get(level, firstRow + row, firstCol + col));
                 }
             }
+            return region;
         }
 
-        return definedHeightMap;
+        public int getTileCount() {
+            int count = 0;
+            for (HashMap<Long, HeightMap> tiles : levels) {
+                count += tiles.size();
+            }
+            return count;
+        }
     }
 
     public static void singleDemo() {
-        System.out.println(Arrays.deepToString(generateHeightMap(1, 0, 1)));
+        System.out.println(Arrays.deepToString(generateHeightMap(1, 0, 1).toArray()));
 
         JFrame mainFrame = new JFrame("Diamond Square Demo");
         mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -206,7 +872,7 @@ public class DiamondSquare {
             controlPanel.setBorder(new LineBorder(Color.RED));
             controlPanel.setLayout(new BoxLayout(controlPanel, BoxLayout.Y_AXIS));
 
-            controlPanel.add(new JLabel("Parameters (sizeFactor$initialRandomness$roughnessFactor):"));
+            controlPanel.add(new JLabel("Parameters (sizeFactor$initialRandomness$roughnessFactor[$seed]):"));
 
             JTextArea parametersTextArea = new JTextArea(
                     "7$1.0$0.5");
@@ -223,7 +889,12 @@ public class DiamondSquare {
                         int sizeFactor = Integer.parseInt(parameterString.split("\\$")[0]);
                         double initialRandomness = Double.parseDouble(parameterString.split("\\$")[1]);
                         double roughnessFactor = Double.parseDouble(parameterString.split("\\$")[2]);
-                        canvas.addShape(new PixelGrid(generateHeightMap(sizeFactor, initialRandomness, roughnessFactor),
+                        // an optional 4th parameter is a seed
+                        HeightMap heightMap = parameterString.split("\\$").length > 3
+                                ? generateHeightMap(sizeFactor, initialRandomness, roughnessFactor,
+                                        Long.parseLong(parameterString.split("\\$")[3].trim()))
+                                : generateHeightMap(sizeFactor, initialRandomness, roughnessFactor);
+                        canvas.addShape(new PixelGrid(heightMap,
                                 0, 0, 640,
                                 640, PixelGrid::coloredRGBGenerator));
                     }
@@ -239,7 +910,7 @@ public class DiamondSquare {
         mainFrame.setVisible(true);
     }
 
-    public static void createTerrainEditor(double[][] heightMap, int displayWidth, int displayHeight) {
+    public static void createTerrainEditor(HeightMap heightMap, int displayWidth, int displayHeight) {
         JFrame terrain = new JFrame("Diamond Square Terrain Editor");
 
         Canvas canvas = new Canvas();
@@ -247,7 +918,7 @@ public class DiamondSquare {
 
         // i don't know what the atomic part of this does, but i am using this because
         // anything i reference in an enclosing scope must be final (idk either)
-        AtomicReference<double[][]> heightMapReference = new AtomicReference<double[][]>(heightMap);
+        AtomicReference<HeightMap> heightMapReference = new AtomicReference<HeightMap>(heightMap);
 
         canvas.addShape(new PixelGrid(heightMap, 0, 0, displayWidth, displayHeight,
                 ColorGradient.createTerrainStyleGradient()));
@@ -274,12 +945,13 @@ public class DiamondSquare {
             regenerateButton.addActionListener(new ActionListener() {
                 @Override
                 public void actionPerformed(ActionEvent e) {
-                    if (2 * heightMapReference.get().length - 1 > RECOMMENDED_MAX_DEFINITION
-                            || 2 * heightMapReference.get()[0].length - 1 > RECOMMENDED_MAX_DEFINITION) {
+                    if (2 * heightMapReference.get().getHeight() - 1 > RECOMMENDED_MAX_DEFINITION
+                            || 2 * heightMapReference.get().getWidth() - 1 > RECOMMENDED_MAX_DEFINITION) {
                         int selectedOption = JOptionPane.showConfirmDialog(null,
                                 "Next iteration will lead to definition higher than the recommended: "
                                         + RECOMMENDED_MAX_DEFINITION + ". Currently :"
-                                        + Math.max(heightMapReference.get().length, heightMapReference.get()[0].length)
+                                        + Math.max(heightMapReference.get().getHeight(),
+                                                heightMapReference.get().getWidth())
                                         + ".",
                                 "Select an Option", JOptionPane.OK_CANCEL_OPTION);
 
@@ -304,6 +976,65 @@ public class DiamondSquare {
                 }
             });
             controlPanel.add(regenerateButton);
+
+            controlPanel.add(new JLabel("Region (rowStart$colStart$rowEnd$colEnd$level): "));
+
+            // in rows and columns of the current map
+            JTextArea regionTextArea = new JTextArea(
+                    "0$0$0.5$0.5$4");
+            controlPanel.add(regionTextArea);
+
+            // only refines what is shown, so the level can go way past
+            // RECOMMENDED_MAX_DEFINITION as long as the region is small
+            AtomicReference<RefinementTree> refinementTreeReference = new AtomicReference<RefinementTree>();
+
+            JButton refineRegionButton = new JButton("Refine Region");
+            refineRegionButton.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    RefinementTree refinementTree = refinementTreeReference.get();
+                    if (refinementTree == null || refinementTree.getBase() != heightMapReference.get()) {
+                        refinementTree = new RefinementTree(heightMapReference.get(),
+                                Double.parseDouble(randomnessTextArea.getText()),
+                                Double.parseDouble(autoRoughnessTextArea.getText()),
+                                ThreadLocalRandom.current().nextLong());
+                        refinementTreeReference.set(refinementTree);
+                    }
+
+                    String[] region = regionTextArea.getText().split("\\$");
+
+                    canvas.clear();
+                    canvas.addShape(new PixelGrid(refinementTree.sample(Double.parseDouble(region[0]),
+                            Double.parseDouble(region[1]), Double.parseDouble(region[2]),
+                            Double.parseDouble(region[3]), Integer.parseInt(region[4].trim())), 0, 0, 640, 640,
+                            ColorGradient.createTerrainStyleGradient()));
+                }
+            });
+            controlPanel.add(refineRegionButton);
+
+            JButton saveButton = new JButton("Save");
+            saveButton.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    JFileChooser fileChooser = new JFileChooser();
+                    if (fileChooser.showSaveDialog(terrain) != JFileChooser.APPROVE_OPTION) {
+                        return;
+                    }
+
+                    HeightMap currentHeightMap = heightMapReference.get();
+                    try {
+                        // the editor doesn't use seeds, so there isn't one to save
+                        HeightMapFile.write(currentHeightMap, fileChooser.getSelectedFile().toPath(),
+                                new HeightMapFile.Header(currentHeightMap.getWidth(), currentHeightMap.getHeight(),
+                                        currentHeightMap.getPrecision(), 0,
+                                        Double.parseDouble(randomnessTextArea.getText()),
+                                        Double.parseDouble(autoRoughnessTextArea.getText()), "diamond-square"));
+                    } catch (IOException exception) {
+                        JOptionPane.showMessageDialog(terrain, "Couldn't save: " + exception.getMessage());
+                    }
+                }
+            });
+            controlPanel.add(saveButton);
         }
 
         terrain.setLayout(new BorderLayout());
@@ -313,7 +1044,7 @@ public class DiamondSquare {
 
         terrain.setVisible(true);
 
-        // TODO: save, undo, allow to change initial array, click to manually change
+        // TODO: undo, allow to change initial array, click to manually change
         // values
     }
 
@@ -349,7 +1080,8 @@ public class DiamondSquare {
         generateButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                createTerrainEditor(parseDoubleMatrix(initialHeightMapTextArea.getText()), 640, 640);
+                createTerrainEditor(HeightMap.of(parseDoubleMatrix(initialHeightMapTextArea.getText())), 640,
+                        640);
             }
         });
 
@@ -0,0 +1,247 @@
+package simple;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import javax.swing.JComboBox;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+
+import simple.Canvas.ColorGradient;
+import simple.Canvas.ColorMap;
+
+/**
+ * Layers several octaves of 2D perlin noise on top of each other. Every octave
+ * is lacunarity times the frequency and gain times the amplitude of the one
+ * before it, which gives the big hills and small bumps look that the midpoint
+ * displacement and diamond square demos get from their roughness factors.
+ *
+ * The output is divided by the sum of the amplitudes so it stays in the same
+ * range as a single octave.
+ *
+ * Instances reuse their octave buffers between fill calls, so one instance
+ * should not be filled from two threads at once.
+ */
+public class FractalNoise {
+    public static enum Type {
+        /** Plain fractal brownian motion, just the noise added up. */
+        FBM {
+            @Override
+            public double shape(double noise) {
+                return noise;
+            }
+        },
+        /** Sharp creases where the noise crosses 0, like mountain ridges. */
+        RIDGED {
+            @Override
+            public double shape(double noise) {
+                double ridge = 1 - Math.abs(noise);
+                return 2 * ridge * ridge - 1;
+            }
+        },
+        /** Sharp valleys where the noise crosses 0 and round tops, like clouds. */
+        BILLOW {
+            @Override
+            public double shape(double noise) {
+                return 2 * Math.abs(noise) - 1;
+            }
+        };
+
+        /**
+         * Keeps [-1, 1] as [-1, 1].
+         */
+        public abstract double shape(double noise);
+    }
+
+    /**
+     * Every octave is moved by this many lattice cells more than the last one.
+     * Otherwise, all the octaves have the same slope at the origin and line up.
+     */
+    private static final double OCTAVE_OFFSET = 1024;
+
+    private final int octaves;
+    private final double lacunarity, gain;
+    private final Type type;
+    private boolean parallel = false;
+
+    private double[][] octaveBuffers = new double[0][];
+
+    public FractalNoise(int octaves, double lacunarity, double gain, Type type) {
+        if (octaves <= 0) {
+            throw new IllegalArgumentException("There has to be at least one octave.");
+        }
+
+        // the same sum sample and fill divide by, which is 0 with a gain of -1 and
+        // an even number of octaves
+        double sumOfAmplitudes = 0, amplitude = 1;
+        for (int octave = 0; octave < octaves; octave++) {
+            sumOfAmplitudes += amplitude;
+            amplitude *= gain;
+        }
+        if (sumOfAmplitudes == 0 || !Double.isFinite(sumOfAmplitudes)) {
+            throw new IllegalArgumentException("The amplitudes of the octaves add up to " + sumOfAmplitudes + ".");
+        }
+
+        this.octaves = octaves;
+        this.lacunarity = lacunarity;
+        this.gain = gain;
+        this.type = type;
+    }
+
+    public FractalNoise(int octaves) {
+        this(octaves, 2, 0.5, Type.FBM);
+    }
+
+    /**
+     * When parallel, fill computes every octave at the same time on the common
+     * fork/join pool. That needs a whole buffer per octave instead of one shared
+     * one, but the output is the same either way.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public double sample(double x, double y) {
+        double sum = 0, sumOfAmplitudes = 0;
+        double frequency = 1, amplitude = 1;
+
+        for (int octave = 0; octave < octaves; octave++) {
+            double offset = octave * OCTAVE_OFFSET;
+
+            sum += amplitude * type.shape(Perlin.perlin2(x * frequency + offset, y * frequency + offset));
+            sumOfAmplitudes += amplitude;
+
+            frequency *= lacunarity;
+            amplitude *= gain;
+        }
+
+        return sum / sumOfAmplitudes;
+    }
+
+    /**
+     * out[row * width + col] = sample(x0 + col * dx, y0 + row * dy), but using
+     * VectorPerlin.fill (which is Perlin.fill when the Vector API isn't there)
+     * for each octave. (The coordinates are scaled before being
+     * stepped instead of after, so the last few bits can be different.)
+     */
+    public void fill(double[] out, int width, int height, double x0, double y0, double dx, double dy) {
+        Perlin.checkGrid(out, width, height);
+
+        int size = width * height;
+        double[][] buffers = getOctaveBuffers(parallel ? octaves : 1, size);
+
+        double[] frequencies = new double[octaves], amplitudes = new double[octaves];
+        double sumOfAmplitudes = 0;
+        {
+            double frequency = 1, amplitude = 1;
+            for (int octave = 0; octave < octaves; octave++) {
+                frequencies[octave] = frequency;
+                amplitudes[octave] = amplitude;
+                sumOfAmplitudes += amplitude;
+
+                frequency *= lacunarity;
+                amplitude *= gain;
+            }
+        }
+
+        if (parallel) {
+            IntStream.range(0, octaves).parallel().forEach(octave -> fillOctave(buffers[octave], width, height,
+                    x0, y0, dx, dy, octave, frequencies[octave]));
+        }
+
+        Arrays.fill(out, 0, size, 0);
+        for (int octave = 0; octave < octaves; octave++) {
+            double[] buffer = parallel ? buffers[octave] : buffers[0];
+            if (!parallel) {
+                fillOctave(buffer, width, height, x0, y0, dx, dy, octave, frequencies[octave]);
+            }
+
+            double amplitude = amplitudes[octave];
+            for (int i = 0; i < size; i++) {
+                out[i] += amplitude * type.shape(buffer[i]);
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            out[i] /= sumOfAmplitudes;
+        }
+    }
+
+    private static void fillOctave(double[] buffer, int width, int height, double x0, double y0, double dx,
+            double dy, int octave, double frequency) {
+        double offset = octave * OCTAVE_OFFSET;
+        VectorPerlin.fill(buffer, width, height, x0 * frequency + offset, y0 * frequency + offset, dx * frequency,
+                dy * frequency);
+    }
+
+    private double[][] getOctaveBuffers(int count, int size) {
+        if (octaveBuffers.length < count) {
+            octaveBuffers = Arrays.copyOf(octaveBuffers, count);
+        }
+        for (int i = 0; i < count; i++) {
+            if (octaveBuffers[i] == null || octaveBuffers[i].length < size) {
+                octaveBuffers[i] = new double[size];
+            }
+        }
+        return octaveBuffers;
+    }
+
+    public static void fractalNoiseDemo() {
+        JFrame mainFrame = new JFrame("Fractal Noise Demo");
+        mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+
+        Canvas canvas = new Canvas();
+        canvas.setSize(new Dimension(540, 540));
+
+        JPanel controlPanel = new JPanel();
+
+        {
+            JComboBox<Type> typeComboBox = new JComboBox<Type>(Type.values());
+            JSlider octavesSlider = new JSlider(1, 12, 6);
+
+            ActionListener actionListener = new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    canvas.clear();
+
+                    FractalNoise noise = new FractalNoise(octavesSlider.getValue(), 2, 0.5,
+                            (Type) typeComboBox.getSelectedItem());
+
+                    ColorMap colorMap = new ColorMap(
+                            (x, y) -> MathUtils.mapToRange(noise.sample(x, y), -1, 1, 0, 1),
+                            540, 540, 0, 5, 0, 5, ColorGradient.createTerrainStyleGradient());
+                    colorMap.setPool(ForkJoinPool.commonPool());
+                    canvas.addShape(colorMap);
+                }
+            };
+
+            actionListener.actionPerformed(null);
+
+            typeComboBox.addActionListener(actionListener);
+            octavesSlider.addChangeListener(e -> {
+                if (!octavesSlider.getValueIsAdjusting()) {
+                    actionListener.actionPerformed(null);
+                }
+            });
+
+            controlPanel.add(typeComboBox);
+            controlPanel.add(octavesSlider);
+        }
+
+        mainFrame.setLayout(new BorderLayout());
+        mainFrame.add(canvas, BorderLayout.CENTER);
+        mainFrame.add(controlPanel, BorderLayout.EAST);
+        mainFrame.pack();
+        mainFrame.setVisible(true);
+    }
+
+    public static void main(String[] args) {
+        fractalNoiseDemo();
+    }
+}
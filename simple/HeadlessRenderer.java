@@ -0,0 +1,188 @@
+package simple;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.DoubleToIntFunction;
+import java.util.stream.LongStream;
+
+import javax.imageio.ImageIO;
+
+import simple.Canvas.ColorGradient;
+import simple.Canvas.PixelGrid;
+import simple.Canvas.Shape;
+import simple.HeightMap.Precision;
+
+/**
+ * Renders shapes and height maps into images without ever opening a window,
+ * so it works with -Djava.awt.headless=true. Nothing here touches Swing; the
+ * shapes paint onto a BufferedImage's Graphics instead of a JPanel's.
+ *
+ * The main method renders previews for a range of seeds, for example
+ *
+ * java -Djava.awt.headless=true simple.HeadlessRenderer diamond-square 0 1000 8 png previews
+ */
+public class HeadlessRenderer {
+    /**
+     * Paints the shapes in order onto a transparent width by height image.
+     */
+    public static BufferedImage render(int width, int height, Shape... shapes) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+
+        try {
+            for (Shape shape : shapes) {
+                shape.paintOnTo(g);
+            }
+        } finally {
+            g.dispose();
+        }
+
+        return image;
+    }
+
+    /**
+     * One pixel per height. This skips Graphics completely since PixelGrid
+     * already writes the colors into an image.
+     */
+    public static BufferedImage render(HeightMap heightMap, DoubleToIntFunction heightToRGBFunction) {
+        return new PixelGrid(heightMap, 0, 0, heightMap.getWidth(), heightMap.getHeight(), heightToRGBFunction)
+                .getImage();
+    }
+
+    /**
+     * A width by height image of the whole map, taking the nearest height for
+     * every pixel. This is how maps too big to be an image (like big OFF_HEAP
+     * ones) get previews; only the heights that are shown are read.
+     */
+    public static BufferedImage render(HeightMap heightMap, DoubleToIntFunction heightToRGBFunction, int width,
+            int height) {
+        PixelGrid pixelGrid = new PixelGrid(width, height, 0, 0, width, height);
+        int[] argb = pixelGrid.getARGB();
+
+        for (int y = 0; y < height; y++) {
+            int row = (int) ((long) y * (heightMap.getHeight() - 1) / Math.max(1, height - 1));
+            for (int x = 0; x < width; x++) {
+                int col = (int) ((long) x * (heightMap.getWidth() - 1) / Math.max(1, width - 1));
+                argb[y * width + x] = heightToRGBFunction.applyAsInt(heightMap.get(row, col));
+            }
+        }
+
+        return pixelGrid.getImage();
+    }
+
+    /**
+     * The pixels of an image as ARGB ints, row major. For the images made here
+     * this is the image's own buffer, not a copy.
+     */
+    public static int[] getARGB(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB
+                && image.getRaster().getDataBuffer() instanceof DataBufferInt dataBuffer
+                && dataBuffer.getData().length == image.getWidth() * image.getHeight()) {
+            return dataBuffer.getData();
+        }
+
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    public static void writePNG(BufferedImage image, Path path) throws IOException {
+        if (!ImageIO.write(image, "png", path.toFile())) {
+            throw new IOException("No PNG writer was found.");
+        }
+    }
+
+    /**
+     * Writes the pixels as 4 bytes each (alpha, red, green, blue), row major,
+     * with no header. Whoever reads it has to know the size.
+     */
+    public static void writeARGB(int[] argb, OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16); // big endian, so the bytes come out as A R G B
+
+        for (int i = 0; i < argb.length; i++) {
+            if (!buffer.hasRemaining()) {
+                out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+            buffer.putInt(argb[i]);
+        }
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    public static void writeARGB(BufferedImage image, Path path) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            writeARGB(getARGB(image), out);
+        }
+    }
+
+    /**
+     * A 2^sizeFactor + 1 square preview of one seed. Perlin is shown over 8 by 8
+     * cells of a GradientTable made from the seed.
+     */
+    public static BufferedImage renderPreview(String generator, long seed, int sizeFactor) {
+        int size = (1 << sizeFactor) + 1;
+        ColorGradient gradient = ColorGradient.createTerrainStyleGradient();
+
+        switch (generator) {
+            case "diamond-square": {
+                return render(DiamondSquare.generateHeightMap(sizeFactor, 1, 0.5, seed, Precision.DOUBLE, null),
+                        gradient);
+            }
+            case "perlin": {
+                HeightMap.Doubles heightMap = new HeightMap.Doubles(size, size);
+                double step = 8.0 / size;
+                Perlin.fill(heightMap.getData(), size, size, 0, 0, step, step, new Perlin.GradientTable(seed, 2));
+                return render(heightMap, height -> gradient.applyAsInt(MathUtils.mapToRange(height, -1, 1, 0, 1)));
+            }
+            default:
+                throw new IllegalArgumentException("Unknown generator " + generator + ".");
+        }
+    }
+
+    /**
+     * Renders firstSeed to firstSeed + seedCount - 1 into outputFolder, spread
+     * over the common pool. Files are named generator-seed.png (or .argb).
+     */
+    public static void renderSeeds(String generator, long firstSeed, long seedCount, int sizeFactor,
+            String format, Path outputFolder) throws IOException {
+        if (!format.equals("png") && !format.equals("argb")) {
+            throw new IllegalArgumentException("Unknown format " + format + ", use png or argb.");
+        }
+        Files.createDirectories(outputFolder);
+
+        LongStream.range(firstSeed, firstSeed + seedCount).parallel().forEach(seed -> {
+            BufferedImage image = renderPreview(generator, seed, sizeFactor);
+            Path path = outputFolder.resolve(generator + "-" + seed + "." + format);
+
+            try {
+                if (format.equals("png")) {
+                    writePNG(image, path);
+                } else {
+                    writeARGB(image, path);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 6) {
+            System.err.println("Usage: HeadlessRenderer <diamond-square|perlin> <first seed> <seed count> "
+                    + "<size factor> <png|argb> <output folder>");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        renderSeeds(args[0], Long.parseLong(args[1]), Long.parseLong(args[2]), Integer.parseInt(args[3]), args[4],
+                Paths.get(args[5]));
+        System.out.println("Rendered " + args[2] + " previews in " + (System.nanoTime() - start) / 1_000_000 + "ms.");
+    }
+}
@@ -0,0 +1,397 @@
+package simple;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A rectangle of heights stored row major in one flat array, instead of a
+ * double[][] where every row is its own object somewhere on the heap. Rows
+ * next to each other are next to each other in memory, which is what the
+ * diamond square loops want since they always look one row up and one row
+ * down.
+ *
+ * The height at (row, col) is at index row * stride + col. The stride is
+ * usually the width, but it can be bigger so that a map can be a window into a
+ * bigger array.
+ */
+public abstract class HeightMap {
+    /**
+     * How the heights are stored. The generators always do their math in
+     * doubles; FLOAT only rounds each height to a float when it is stored.
+     * 
+     * Rounding to a float is off by at most 2^-24 (about 6e-8) times the height.
+     * Diamond square averages heights that were already rounded, and an average
+     * is never further off than the heights it came from. But every level stores
+     * rounded heights twice, once in the square pass and once in the diamond
+     * pass (which averages the square pass's heights), and the corners are
+     * rounded before the first level. A map with a size factor of n can then be
+     * up to (2n + 1) * 2^-24 times its biggest height away from the same map
+     * made with DOUBLE (for the seeded generators, where that comparison makes
+     * sense). In practice the roundings mostly cancel out and it stays well
+     * under that. Perlin heights are only rounded once.
+     */
+    public static enum Precision {
+        DOUBLE(Double.BYTES), FLOAT(Float.BYTES);
+
+        public final int bytes;
+
+        private Precision(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Where the heights live. OFF_HEAP maps are made of direct ByteBuffers, so
+     * they can be bigger than an array can be (about 2 billion heights) and
+     * don't count towards the heap or slow down garbage collection. They are
+     * limited by -XX:MaxDirectMemorySize instead, which is the max heap size
+     * unless it is set.
+     */
+    public static enum Storage {
+        HEAP, OFF_HEAP
+    }
+
+    protected final int width, height, stride;
+
+    protected HeightMap(int width, int height, int stride) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Height maps can't be empty: " + width + "x" + height + ".");
+        }
+        if (stride < width) {
+            throw new IllegalArgumentException("Stride " + stride + " is smaller than width " + width + ".");
+        }
+
+        this.width = width;
+        this.height = height;
+        this.stride = stride;
+    }
+
+    /**
+     * The number of elements an array needs for a width by height map with a
+     * stride of width.
+     */
+    protected static int arraySize(int width, int height) {
+        if ((long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "A " + width + "x" + height + " height map is too big for an array.");
+        }
+        return width * height;
+    }
+
+    protected static void checkArraySize(int width, int height, int stride, int length) {
+        if ((long) (height - 1) * stride + width > length) {
+            throw new IllegalArgumentException("Data is too small for a " + width + "x" + height
+                    + " height map with stride " + stride + ".");
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    public abstract Precision getPrecision();
+
+    public abstract Storage getStorage();
+
+    /**
+     * How many bytes the storage behind this map takes up, which includes the
+     * padding of a bigger stride and anything past the last row.
+     */
+    public abstract long getStorageBytes();
+
+    /**
+     * A map of a different size over the same storage, with the same stride, so
+     * (row, col) is the same height in both. It can be bigger than this map as
+     * long as the storage has room for it.
+     */
+    public abstract HeightMap view(int width, int height);
+
+    public abstract double get(int row, int col);
+
+    public abstract void set(int row, int col, double value);
+
+    public static HeightMap create(int width, int height, Precision precision) {
+        return switch (precision) {
+            case DOUBLE -> new Doubles(width, height);
+            case FLOAT -> new Floats(width, height);
+        };
+    }
+
+    public static HeightMap create(int width, int height, Precision precision, Storage storage) {
+        return createWithCapacity(width, height, width, height, precision, storage);
+    }
+
+    /**
+     * A new map with the same precision and storage as this one (but not the
+     * heights).
+     */
+    public HeightMap createSimilar(int width, int height) {
+        return create(width, height, getPrecision(), getStorage());
+    }
+
+    /**
+     * A width by height map with room to grow to maxWidth by maxHeight through
+     * view, without allocating again.
+     */
+    public static HeightMap createWithCapacity(int width, int height, int maxWidth, int maxHeight,
+            Precision precision) {
+        return createWithCapacity(width, height, maxWidth, maxHeight, precision, Storage.HEAP);
+    }
+
+    public static HeightMap createWithCapacity(int width, int height, int maxWidth, int maxHeight,
+            Precision precision, Storage storage) {
+        if (width > maxWidth || height > maxHeight) {
+            throw new IllegalArgumentException("A " + width + "x" + height + " map is bigger than its capacity of "
+                    + maxWidth + "x" + maxHeight + ".");
+        }
+
+        if (storage == Storage.OFF_HEAP) {
+            return new Segmented(width, height, maxWidth, precision,
+                    Segmented.allocateDirect((long) maxWidth * maxHeight * precision.bytes));
+        }
+        return switch (precision) {
+            case DOUBLE -> new Doubles(width, height, maxWidth, new double[arraySize(maxWidth, maxHeight)]);
+            case FLOAT -> new Floats(width, height, maxWidth, new float[arraySize(maxWidth, maxHeight)]);
+        };
+    }
+
+    public static HeightMap of(double[][] rows) {
+        // trust that rows is rectangular, like everything else does
+        Doubles heightMap = new Doubles(rows[0].length, rows.length);
+
+        for (int row = 0; row < rows.length; row++) {
+            System.arraycopy(rows[row], 0, heightMap.data, row * heightMap.stride, heightMap.width);
+        }
+
+        return heightMap;
+    }
+
+    public double[][] toArray() {
+        double[][] rows = new double[height][width];
+
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                rows[row][col] = get(row, col);
+            }
+        }
+
+        return rows;
+    }
+
+    public static final class Doubles extends HeightMap {
+        private final double[] data;
+
+        public Doubles(int width, int height) {
+            this(width, height, width, new double[arraySize(width, height)]);
+        }
+
+        public Doubles(int width, int height, int stride, double[] data) {
+            super(width, height, stride);
+
+            checkArraySize(width, height, stride, data.length);
+
+            this.data = data;
+        }
+
+        public double[] getData() {
+            return data;
+        }
+
+        @Override
+        public Precision getPrecision() {
+            return Precision.DOUBLE;
+        }
+
+        @Override
+        public Storage getStorage() {
+            return Storage.HEAP;
+        }
+
+        @Override
+        public long getStorageBytes() {
+            return (long) data.length * 8;
+        }
+
+        @Override
+        public Doubles view(int width, int height) {
+            return new Doubles(width, height, stride, data);
+        }
+
+        @Override
+        public double get(int row, int col) {
+            return data[row * stride + col];
+        }
+
+        @Override
+        public void set(int row, int col, double value) {
+            data[row * stride + col] = value;
+        }
+    }
+
+    /**
+     * Half the memory of Doubles. Heights are still passed around as doubles,
+     * they are just rounded to the nearest float when stored.
+     */
+    public static final class Floats extends HeightMap {
+        private final float[] data;
+
+        public Floats(int width, int height) {
+            this(width, height, width, new float[arraySize(width, height)]);
+        }
+
+        public Floats(int width, int height, int stride, float[] data) {
+            super(width, height, stride);
+
+            checkArraySize(width, height, stride, data.length);
+
+            this.data = data;
+        }
+
+        public float[] getData() {
+            return data;
+        }
+
+        @Override
+        public Precision getPrecision() {
+            return Precision.FLOAT;
+        }
+
+        @Override
+        public Storage getStorage() {
+            return Storage.HEAP;
+        }
+
+        @Override
+        public long getStorageBytes() {
+            return (long) data.length * 4;
+        }
+
+        @Override
+        public Floats view(int width, int height) {
+            return new Floats(width, height, stride, data);
+        }
+
+        @Override
+        public double get(int row, int col) {
+            return data[row * stride + col];
+        }
+
+        @Override
+        public void set(int row, int col, double value) {
+            data[row * stride + col] = (float) value;
+        }
+    }
+
+    /**
+     * Heights stored little endian in ByteBuffers instead of an array, for
+     * storage that isn't on the heap (direct buffers or a memory mapped file). A
+     * single ByteBuffer can't be bigger than 2GB, so the heights are split into
+     * segments of SEGMENT_BYTES each (the last one can be shorter), and the
+     * index of a height is a long.
+     */
+    public static final class Segmented extends HeightMap {
+        public static final int SEGMENT_SHIFT = 30;
+        public static final long SEGMENT_BYTES = 1L << SEGMENT_SHIFT;
+        private static final long SEGMENT_MASK = SEGMENT_BYTES - 1;
+
+        private final Precision precision;
+        private final ByteBuffer[] segments;
+
+        /**
+         * Every segment but the last has to be exactly SEGMENT_BYTES long. The
+         * buffers are switched to little endian.
+         */
+        public Segmented(int width, int height, int stride, Precision precision, ByteBuffer[] segments) {
+            super(width, height, stride);
+
+            long capacity = 0;
+            for (int i = 0; i < segments.length; i++) {
+                if (i < segments.length - 1 && segments[i].capacity() != SEGMENT_BYTES) {
+                    throw new IllegalArgumentException("Segment " + i + " isn't " + SEGMENT_BYTES + " bytes.");
+                }
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+                capacity += segments[i].capacity();
+            }
+            if (((long) (height - 1) * stride + width) * precision.bytes > capacity) {
+                throw new IllegalArgumentException("Segments are too small for a " + width + "x" + height
+                        + " height map with stride " + stride + ".");
+            }
+
+            this.precision = precision;
+            this.segments = segments;
+        }
+
+        /**
+         * Direct segments for bytes bytes, all but the last SEGMENT_BYTES long.
+         */
+        public static ByteBuffer[] allocateDirect(long bytes) {
+            ByteBuffer[] segments = new ByteBuffer[(int) ((bytes + SEGMENT_BYTES - 1) >>> SEGMENT_SHIFT)];
+
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = ByteBuffer.allocateDirect((int) Math.min(SEGMENT_BYTES, bytes - i * SEGMENT_BYTES));
+            }
+            return segments;
+        }
+
+        public ByteBuffer[] getSegments() {
+            return segments;
+        }
+
+        @Override
+        public Precision getPrecision() {
+            return precision;
+        }
+
+        /**
+         * OFF_HEAP, unless someone made one out of heap ByteBuffers.
+         */
+        @Override
+        public Storage getStorage() {
+            return segments.length > 0 && !segments[0].isDirect() ? Storage.HEAP : Storage.OFF_HEAP;
+        }
+
+        @Override
+        public long getStorageBytes() {
+            long bytes = 0;
+            for (ByteBuffer segment : segments) {
+                bytes += segment.capacity();
+            }
+            return bytes;
+        }
+
+        @Override
+        public Segmented view(int width, int height) {
+            return new Segmented(width, height, stride, precision, segments);
+        }
+
+        @Override
+        public double get(int row, int col) {
+            long offset = ((long) row * stride + col) * precision.bytes;
+            ByteBuffer segment = segments[(int) (offset >>> SEGMENT_SHIFT)];
+            int position = (int) (offset & SEGMENT_MASK);
+
+            return precision == Precision.DOUBLE ? segment.getDouble(position) : segment.getFloat(position);
+        }
+
+        @Override
+        public void set(int row, int col, double value) {
+            long offset = ((long) row * stride + col) * precision.bytes;
+            ByteBuffer segment = segments[(int) (offset >>> SEGMENT_SHIFT)];
+            int position = (int) (offset & SEGMENT_MASK);
+
+            if (precision == Precision.DOUBLE) {
+                segment.putDouble(position, value);
+            } else {
+                segment.putFloat(position, (float) value);
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package simple;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import simple.HeightMap.Precision;
+
+/**
+ * Saves height maps in a simple binary format that is read and written
+ * through memory mapping, so opening a map doesn't load it onto the heap. The
+ * operating system pages the heights in (and out) as they are used.
+ *
+ * Everything is little endian. The file is a HEADER_BYTES long header:
+ *
+ * <pre>
+ * 0   int     MAGIC
+ * 4   short   VERSION
+ * 6   byte    precision (0 for DOUBLE, 1 for FLOAT)
+ * 7   byte    unused
+ * 8   int     width
+ * 12  int     height
+ * 16  long    seed
+ * 24  double  initial randomness
+ * 32  double  roughness factor
+ * 40  byte[]  generator name, ASCII, padded with 0s to 24 bytes
+ * </pre>
+ *
+ * followed by the heights row by row, as doubles or floats.
+ */
+public class HeightMapFile {
+    public static final int MAGIC = 0x50414D48; // "HMAP" when read as bytes
+    public static final short VERSION = 1;
+    public static final int HEADER_BYTES = 64;
+    private static final int GENERATOR_BYTES = 24;
+
+    /**
+     * What is in the header. The seed and generator parameters aren't used
+     * when reading, they are just kept with the map so it can be made again.
+     */
+    public static class Header {
+        private final int width, height;
+        private final Precision precision;
+        private final long seed;
+        private final double initialRandomness, roughnessFactor;
+        private final String generator;
+
+        public Header(int width, int height, Precision precision, long seed, double initialRandomness,
+                double roughnessFactor, String generator) {
+            if (generator.getBytes(StandardCharsets.US_ASCII).length > GENERATOR_BYTES) {
+                throw new IllegalArgumentException(
+                        "Generator names can't be longer than " + GENERATOR_BYTES + " characters.");
+            }
+
+            this.width = width;
+            this.height = height;
+            this.precision = precision;
+            this.seed = seed;
+            this.initialRandomness = initialRandomness;
+            this.roughnessFactor = roughnessFactor;
+            this.generator = generator;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public Precision getPrecision() {
+            return precision;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public double getInitialRandomness() {
+            return initialRandomness;
+        }
+
+        public double getRoughnessFactor() {
+            return roughnessFactor;
+        }
+
+        public String getGenerator() {
+            return generator;
+        }
+
+        public long getDataBytes() {
+            return (long) width * height * precision.bytes;
+        }
+
+        private void writeTo(ByteBuffer buffer) {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0, MAGIC);
+            buffer.putShort(4, VERSION);
+            buffer.put(6, (byte) precision.ordinal());
+            buffer.putInt(8, width);
+            buffer.putInt(12, height);
+            buffer.putLong(16, seed);
+            buffer.putDouble(24, initialRandomness);
+            buffer.putDouble(32, roughnessFactor);
+
+            byte[] name = generator.getBytes(StandardCharsets.US_ASCII);
+            for (int i = 0; i < GENERATOR_BYTES; i++) {
+                buffer.put(40 + i, i < name.length ? name[i] : 0);
+            }
+        }
+
+        private static Header readFrom(ByteBuffer buffer) throws IOException {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a height map file.");
+            }
+            if (buffer.getShort(4) != VERSION) {
+                throw new IOException("Unsupported height map file version " + buffer.getShort(4) + ".");
+            }
+            int precision = buffer.get(6);
+            if (precision < 0 || precision >= Precision.values().length) {
+                throw new IOException("Unknown precision " + precision + ".");
+            }
+            int width = buffer.getInt(8), height = buffer.getInt(12);
+            if (width <= 0 || height <= 0) {
+                throw new IOException("A " + width + "x" + height + " height map can't be right.");
+            }
+            // the heights have to fit in a long, and be split into an int's worth of
+            // segments
+            long dataBytes;
+            try {
+                dataBytes = Math.multiplyExact(Math.multiplyExact((long) width, height),
+                        Precision.values()[precision].bytes);
+            } catch (ArithmeticException e) {
+                dataBytes = Long.MAX_VALUE;
+            }
+            if (dataBytes >>> HeightMap.Segmented.SEGMENT_SHIFT >= Integer.MAX_VALUE) {
+                throw new IOException("A " + width + "x" + height + " height map is too big to map.");
+            }
+
+            byte[] name = new byte[GENERATOR_BYTES];
+            int nameLength = 0;
+            while (nameLength < GENERATOR_BYTES && buffer.get(40 + nameLength) != 0) {
+                name[nameLength] = buffer.get(40 + nameLength);
+                nameLength++;
+            }
+
+            return new Header(width, height, Precision.values()[precision],
+                    buffer.getLong(16), buffer.getDouble(24), buffer.getDouble(32),
+                    new String(name, 0, nameLength, StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * Makes (or replaces) a file for header and maps it. Nothing is copied:
+     * setting a height on the returned map writes it to the file, so a generator
+     * can fill the map directly.
+     */
+    public static HeightMap.Segmented create(Path path, Header header) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_BYTES);
+            header.writeTo(headerBuffer);
+            channel.write(headerBuffer, 0);
+
+            return map(channel, header, FileChannel.MapMode.READ_WRITE);
+        }
+    }
+
+    /**
+     * Maps an existing file. When writable, changes to the map go to the file.
+     */
+    public static HeightMap.Segmented open(Path path, boolean writable) throws IOException {
+        try (FileChannel channel = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ)) {
+            Header header = readHeader(channel);
+            if (channel.size() < HEADER_BYTES + header.getDataBytes()) {
+                throw new IOException("The file is shorter than its header says.");
+            }
+
+            return map(channel, header, writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY);
+        }
+    }
+
+    public static Header readHeader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readHeader(channel);
+        }
+    }
+
+    private static Header readHeader(FileChannel channel) throws IOException {
+        ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_BYTES);
+        while (headerBuffer.hasRemaining()) {
+            if (channel.read(headerBuffer, headerBuffer.position()) < 0) {
+                throw new IOException("The file is too short to be a height map.");
+            }
+        }
+        return Header.readFrom(headerBuffer);
+    }
+
+    /**
+     * The mapping stays valid after the channel is closed. (It is only unmapped
+     * once the buffers are garbage collected.)
+     */
+    private static HeightMap.Segmented map(FileChannel channel, Header header, FileChannel.MapMode mode)
+            throws IOException {
+        long dataBytes = header.getDataBytes();
+        ByteBuffer[] segments = new ByteBuffer[(int) ((dataBytes + HeightMap.Segmented.SEGMENT_BYTES - 1)
+                >>> HeightMap.Segmented.SEGMENT_SHIFT)];
+
+        for (int i = 0; i < segments.length; i++) {
+            long start = (long) i << HeightMap.Segmented.SEGMENT_SHIFT;
+            segments[i] = channel.map(mode, HEADER_BYTES + start,
+                    Math.min(HeightMap.Segmented.SEGMENT_BYTES, dataBytes - start));
+        }
+
+        return new HeightMap.Segmented(header.getWidth(), header.getHeight(), header.getWidth(),
+                header.getPrecision(), segments);
+    }
+
+    /**
+     * Copies heightMap into a new file. The width, height and precision in the
+     * header have to match the map.
+     */
+    public static void write(HeightMap heightMap, Path path, Header header) throws IOException {
+        if (header.getWidth() != heightMap.getWidth() || header.getHeight() != heightMap.getHeight()
+                || header.getPrecision() != heightMap.getPrecision()) {
+            throw new IllegalArgumentException("The header doesn't describe the height map.");
+        }
+
+        HeightMap.Segmented file = create(path, header);
+        for (int row = 0; row < heightMap.getHeight(); row++) {
+            for (int col = 0; col < heightMap.getWidth(); col++) {
+                file.set(row, col, heightMap.get(row, col));
+            }
+        }
+        force(file);
+    }
+
+    /**
+     * Makes sure every change to a mapped height map has reached the disk.
+     */
+    public static void force(HeightMap.Segmented heightMap) {
+        for (ByteBuffer segment : heightMap.getSegments()) {
+            if (segment instanceof MappedByteBuffer mappedSegment) {
+                mappedSegment.force();
+            }
+        }
+    }
+}
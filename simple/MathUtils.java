@@ -1,6 +1,5 @@
 package simple;
 
-import java.util.Random;
 import java.util.function.DoubleUnaryOperator;
 
 public final class MathUtils {
@@ -8,6 +7,68 @@ public final class MathUtils {
         // to make it impossible to have instances of this class
     };
 
+    /**
+     * The increment SplitMix64 uses between states. It is odd and roughly
+     * 2^64 / golden ratio, so consecutive counters land far apart before mixing.
+     */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The SplitMix64 finalizer. Every bit of the input affects every bit of the
+     * output, so counters that only differ by one give unrelated results.
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /*
+     * The hashes below are all a fold of hashCombine starting from 0, so
+     * hash(a, b, c) == hashCombine(hash(a, b), c). A caller that needs many values
+     * sharing a prefix (like the slope of every dimension of one corner) can hash
+     * the prefix once and extend it. None of them allocate, unlike the old
+     * approach of chaining java.util.Random objects, and they only use long
+     * arithmetic so they give the same results on every JVM.
+     */
+
+    public static long hashCombine(long hash, long value) {
+        return mix(hash + value + GOLDEN_GAMMA);
+    }
+
+    public static long hash(long a) {
+        return hashCombine(0, a);
+    }
+
+    public static long hash(long a, long b) {
+        return hashCombine(hash(a), b);
+    }
+
+    public static long hash(long a, long b, long c) {
+        return hashCombine(hash(a, b), c);
+    }
+
+    public static long hash(long a, long b, long c, long d) {
+        return hashCombine(hash(a, b, c), d);
+    }
+
+    public static long hash(long... values) {
+        long hash = 0;
+        for (long value : values) {
+            hash = hashCombine(hash, value);
+        }
+        return hash;
+    }
+
+    /**
+     * Turns a hash into a double in [origin, bound) using its top 53 bits, the
+     * same way java.util.Random does it.
+     */
+    public static double hashToDouble(long hash, double origin, double bound) {
+        double unit = (hash >>> 11) * 0x1.0p-53;
+        return origin + unit * (bound - origin);
+    }
+
     public static double random(long seed, double origin, double bound) {
         /*
          * Java's default random is kinda bad for this purpose since it
@@ -19,22 +80,30 @@ public final class MathUtils {
          * (idk if that is what chaotic system means)
          * ^ I wonder if I'll ever look back at my comments when I become better at math
          * and what I will think. I hope I find pleasure weird comments like these.
+         * 
+         * Both are now solved by hashing instead of using Random at all.
          */
-        return new Random(new Random(new Random(seed).nextLong()).nextLong()).nextDouble(origin, bound);
+        return hashToDouble(hash(seed), origin, bound);
     }
 
-    public static double random(double origin, double bound, long... seeds) {
-        // kinda worried that this might have noticable patterns
-        // my first idea of using the sum of seeds as a new seed would have obvious
-        // patterns so idk
-
-        long trackedSeed = 0;
-        for (long seed : seeds) {
-            // i sure hope that addition in consequence is enough
-            trackedSeed = new Random(new Random(trackedSeed + seed).nextLong()).nextLong();
-        }
+    public static double random(double origin, double bound, long seed0, long seed1) {
+        return hashToDouble(hash(seed0, seed1), origin, bound);
+    }
+
+    public static double random(double origin, double bound, long seed0, long seed1, long seed2) {
+        return hashToDouble(hash(seed0, seed1, seed2), origin, bound);
+    }
 
-        return random(trackedSeed, origin, bound);
+    public static double random(double origin, double bound, long seed0, long seed1, long seed2, long seed3) {
+        return hashToDouble(hash(seed0, seed1, seed2, seed3), origin, bound);
+    }
+
+    /**
+     * Same as the fixed arity overloads (and {@link #random(long, double, double)}
+     * for a single seed), just slower because of the array.
+     */
+    public static double random(double origin, double bound, long... seeds) {
+        return hashToDouble(hash(seeds), origin, bound);
     }
 
     public static double sum(double... nums) {
@@ -6,7 +6,14 @@ import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.function.IntToDoubleFunction;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
@@ -26,21 +33,60 @@ public class MidpointDisplacement {
 
         for (int i = 0; i < initialHeights.length - 1; i++) {
             nextHeights[2 * i] = initialHeights[i];
-            if (isMutationRateMultiplicative) {
-                nextHeights[2 * i + 1] = MathUtils.mapToRange((2 * Math.random() - 1) * mutationRate, -1, 1,
-                        initialHeights[i],
-                        initialHeights[i + 1]);
-            } else {
-                double midpoint = (initialHeights[i] + initialHeights[i + 1]) / 2.0;
-                nextHeights[2 * i + 1] = MathUtils.mapToRange(Math.random(), 0, 1, midpoint - mutationRate,
-                        midpoint + mutationRate);
-            }
+            nextHeights[2 * i + 1] = displace(initialHeights[i], initialHeights[i + 1], Math.random(), mutationRate,
+                    isMutationRateMultiplicative);
         }
         nextHeights[nextHeights.length - 1] = initialHeights[initialHeights.length - 1];
 
         return nextHeights;
     }
 
+    /**
+     * doIteration, but the new point at index i of the result gets its random
+     * number from (seed, level, i) instead of Math.random. level is which
+     * iteration this is, starting at 1 (level 0 is the two starting heights).
+     * 
+     * Every point only depends on its two neighbours, so big iterations are done
+     * in parallel on the common pool. The result is the same either way.
+     */
+    public static double[] doIteration(double[] initialHeights, double mutationRate,
+            boolean isMutationRateMultiplicative, long seed, int level) {
+        double[] nextHeights = new double[2 * initialHeights.length - 1];
+
+        IntStream indices = IntStream.range(0, initialHeights.length - 1);
+        if (initialHeights.length > MIN_PARALLEL_LENGTH) {
+            indices = indices.parallel();
+        }
+        indices.forEach(i -> {
+            nextHeights[2 * i] = initialHeights[i];
+            nextHeights[2 * i + 1] = displace(initialHeights[i], initialHeights[i + 1],
+                    seededRandom(seed, level, 2 * i + 1), mutationRate, isMutationRateMultiplicative);
+        });
+        nextHeights[nextHeights.length - 1] = initialHeights[initialHeights.length - 1];
+
+        return nextHeights;
+    }
+
+    // below this, splitting the work up costs more than it saves
+    private static final int MIN_PARALLEL_LENGTH = 1 << 14;
+
+    private static double seededRandom(long seed, int level, long index) {
+        return MathUtils.random(0, 1, seed, level, index);
+    }
+
+    /**
+     * The height between left and right, given a random number in [0, 1).
+     */
+    private static double displace(double left, double right, double random, double mutationRate,
+            boolean isMutationRateMultiplicative) {
+        if (isMutationRateMultiplicative) {
+            return MathUtils.mapToRange((2 * random - 1) * mutationRate, -1, 1, left, right);
+        } else {
+            double midpoint = (left + right) / 2.0;
+            return MathUtils.mapToRange(random, 0, 1, midpoint - mutationRate, midpoint + mutationRate);
+        }
+    }
+
     public static void displayOneDimensionalHeightMap(double[] heightMap, int viewWidth, int viewHeight,
             int heightMapMin, int heightMapMax) {
         JFrame mainFrame = new JFrame("Display");
@@ -67,6 +113,190 @@ public class MidpointDisplacement {
         return heightMap;
     }
 
+    /**
+     * defaultGenerateHeightmap with every random number coming from seed, so the
+     * same seed always gives the same height map, on any thread. This gives the
+     * same heights as a LazyHeightMap with the same arguments.
+     */
+    public static double[] defaultGenerateHeightmap(int iterations, IntToDoubleFunction mutationRateGenerator,
+            boolean isMutationRateMultiplicative, long seed) {
+        double[] heightMap = new double[] { seededRandom(seed, 0, 0), seededRandom(seed, 0, 1) };
+
+        for (int i = 0; i < iterations; i++) {
+            heightMap = doIteration(heightMap, mutationRateGenerator.applyAsDouble(i), isMutationRateMultiplicative,
+                    seed, i + 1);
+        }
+        return heightMap;
+    }
+
+    /**
+     * A midpoint displacement height map that is never stored. Any height can be
+     * found on its own, and the whole thing can be streamed from left to right,
+     * so a profile with millions of points only costs O(depth) memory.
+     * 
+     * This works because every random number is a hash of (seed, level, index)
+     * instead of coming from Math.random. Level 0 is the two end points (index 0
+     * and 1) and level n is the nth iteration, where the new point at index i of
+     * that level's 2^n + 1 points is between i - 1 and i + 1. The index at a
+     * level is the same as the path of lefts and rights to get there, so it
+     * plays the role of the binary path down the tree. It is the same scheme as
+     * the seeded doIteration, so the heights match the seeded
+     * defaultGenerateHeightmap.
+     */
+    public static class LazyHeightMap implements Iterable<Double> {
+        private final int depth;
+        private final double[] mutationRates;
+        private final boolean isMutationRateMultiplicative;
+        private final long seed;
+        private final double start, end;
+
+        /**
+         * The same as defaultGenerateHeightmap(depth, mutationRateGenerator,
+         * isMutationRateMultiplicative, seed).
+         */
+        public LazyHeightMap(int depth, IntToDoubleFunction mutationRateGenerator,
+                boolean isMutationRateMultiplicative, long seed) {
+            if (depth < 0 || depth > 62) {
+                throw new IllegalArgumentException("Depth has to be between 0 and 62: " + depth + ".");
+            }
+
+            this.depth = depth;
+            this.isMutationRateMultiplicative = isMutationRateMultiplicative;
+            this.seed = seed;
+
+            mutationRates = new double[depth];
+            for (int i = 0; i < depth; i++) {
+                mutationRates[i] = mutationRateGenerator.applyAsDouble(i);
+            }
+
+            start = seededRandom(seed, 0, 0);
+            end = seededRandom(seed, 0, 1);
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getLength() {
+            return (1L << depth) + 1;
+        }
+
+        /**
+         * The height at index, in O(depth) time. This binary searches down the
+         * levels, only making the midpoints of the segments index is in.
+         */
+        public double get(long index) {
+            if (index < 0 || index >= getLength()) {
+                throw new IndexOutOfBoundsException(index);
+            }
+
+            long left = 0, right = 1L << depth;
+            double leftHeight = start, rightHeight = end;
+
+            for (int level = 1; level <= depth; level++) {
+                if (index == left) {
+                    return leftHeight;
+                }
+                if (index == right) {
+                    return rightHeight;
+                }
+
+                long middle = (left + right) >>> 1;
+                double middleHeight = midpoint(level, middle >> (depth - level), leftHeight, rightHeight);
+
+                if (index < middle) {
+                    right = middle;
+                    rightHeight = middleHeight;
+                } else {
+                    left = middle;
+                    leftHeight = middleHeight;
+                }
+            }
+
+            return index == left ? leftHeight : rightHeight;
+        }
+
+        /**
+         * The point at indexAtLevel of level, which is between leftHeight and
+         * rightHeight.
+         */
+        private double midpoint(int level, long indexAtLevel, double leftHeight, double rightHeight) {
+            return displace(leftHeight, rightHeight, seededRandom(seed, level, indexAtLevel),
+                    mutationRates[level - 1], isMutationRateMultiplicative);
+        }
+
+        /**
+         * Every height from left to right. This goes depth first, keeping a stack
+         * of the right ends of the segments it is in, so every midpoint is only
+         * made once and there are never more than depth + 1 of them around.
+         */
+        @Override
+        public PrimitiveIterator.OfDouble iterator() {
+            return new PrimitiveIterator.OfDouble() {
+                private final long[] rightIndices = new long[depth + 1];
+                private final double[] rightHeights = new double[depth + 1];
+                private int stackSize = 0;
+
+                // the last height given out, or -1 before the first one
+                private long index = -1;
+                private double height;
+
+                {
+                    rightIndices[0] = 1L << depth;
+                    rightHeights[0] = end;
+                    stackSize = 1;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return index < 0 || stackSize > 0;
+                }
+
+                @Override
+                public double nextDouble() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    if (index < 0) {
+                        index = 0;
+                        height = start;
+                        return height;
+                    }
+
+                    // split the segment to the right until it is one point long
+                    while (rightIndices[stackSize - 1] - index > 1) {
+                        long right = rightIndices[stackSize - 1];
+                        long middle = (index + right) >>> 1;
+                        int level = depth - Long.numberOfTrailingZeros(middle);
+
+                        rightIndices[stackSize] = middle;
+                        rightHeights[stackSize] = midpoint(level, middle >> (depth - level), height,
+                                rightHeights[stackSize - 1]);
+                        stackSize++;
+                    }
+
+                    stackSize--;
+                    index = rightIndices[stackSize];
+                    height = rightHeights[stackSize];
+                    return height;
+                }
+            };
+        }
+
+        public DoubleStream stream() {
+            return StreamSupport.doubleStream(Spliterators.spliterator(iterator(), getLength(),
+                    Spliterator.ORDERED | Spliterator.NONNULL), false);
+        }
+
+        /**
+         * Only for depths small enough to fit in an array.
+         */
+        public double[] toArray() {
+            return stream().toArray();
+        }
+    }
+
     public static double[] parseStringToDoubleArray(String input) {
         input = input.replaceAll("[\\s\\[\\]{}]", "");
         String[] stringElementsArray = input.split(",");
@@ -10,6 +10,8 @@ import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.DoubleToIntFunction;
 import java.util.function.DoubleUnaryOperator;
 import java.util.function.LongToDoubleFunction;
@@ -430,12 +432,7 @@ public class Perlin {
      ***** same value will be that value.
      */
     public static double sumCoordinateSquaredWeightCalculator(double... offsets) {
-
-        double weirdThing = sum(apply(offsets, x -> x * x));
-        // like distance w/out the sqrt
-
-        double temp = clamp(weirdThing) - 1;
-        return temp * temp;
+        return SUM_COORDINATE_SQUARED_WEIGHT.applyN(offsets, offsets.length);
     }
 
     public static double maxCoordinateWeightCalculator(DoubleUnaryOperator singleDimensionalWeightCalculator,
@@ -448,15 +445,70 @@ public class Perlin {
         return clamp((offset - 1) * (offset - 1));
     }
 
+    public static final WeightCalculator SUM_COORDINATE_SQUARED_WEIGHT = new WeightCalculator() {
+        @Override
+        public double apply2(double offsetX, double offsetY) {
+            return sumCoordinateSquaredWeight(offsetX * offsetX + offsetY * offsetY);
+        }
+
+        @Override
+        public double apply3(double offsetX, double offsetY, double offsetZ) {
+            return sumCoordinateSquaredWeight(offsetX * offsetX + offsetY * offsetY + offsetZ * offsetZ);
+        }
+
+        @Override
+        public double applyN(double[] offsets, int dimensions) {
+            double weirdThing = 0;
+            for (int dimension = 0; dimension < dimensions; dimension++) {
+                weirdThing += offsets[dimension] * offsets[dimension];
+            }
+            // like distance w/out the sqrt
+
+            return sumCoordinateSquaredWeight(weirdThing);
+        }
+    };
+
+    /**
+     * maxCoordinateWeightCalculator as a WeightCalculator.
+     */
+    public static WeightCalculator maxCoordinateWeight(DoubleUnaryOperator singleDimensionalWeightCalculator) {
+        return new WeightCalculator() {
+            // starting from 0 like MathUtils.max
+            @Override
+            public double apply2(double offsetX, double offsetY) {
+                return singleDimensionalWeightCalculator.applyAsDouble(Math.max(offsetY, Math.max(offsetX, 0)));
+            }
+
+            @Override
+            public double apply3(double offsetX, double offsetY, double offsetZ) {
+                return singleDimensionalWeightCalculator
+                        .applyAsDouble(Math.max(offsetZ, Math.max(offsetY, Math.max(offsetX, 0))));
+            }
+
+            @Override
+            public double applyN(double[] offsets, int dimensions) {
+                double maxCoordinate = 0;
+                for (int dimension = 0; dimension < dimensions; dimension++) {
+                    maxCoordinate = Math.max(offsets[dimension], maxCoordinate);
+                }
+                return singleDimensionalWeightCalculator.applyAsDouble(maxCoordinate);
+            }
+        };
+    }
+
+    public static final WeightCalculator MAX_COORDINATE_PARABOLIC_WEIGHT = maxCoordinateWeight(
+            Perlin::parabolic1DWeightCalculator);
+
     public static double[] defaultSlopeGenerator(long... coords) {
-        long[] temp = new long[coords.length + 1];
-        System.arraycopy(coords, 0, temp, 0, coords.length);
+        // hash the corner once and extend it by the dimension, which is the same as
+        // random(-2, 2, coords..., dimension) without building that array
+        long cornerHash = hash(coords);
 
         double[] slope = new double[coords.length];
 
         for (int dimension = 0; dimension < coords.length; dimension++) {
-            temp[temp.length - 1] = dimension; // or else, all the slopes will be the same.
-            slope[dimension] = random(-2, 2, temp);
+            // or else, all the slopes will be the same.
+            slope[dimension] = hashToDouble(hashCombine(cornerHash, dimension), -2, 2);
         }
 
         return slope;
@@ -467,11 +519,254 @@ public class Perlin {
         public double apply(double... inputs);
     }
 
+    /**
+     * A weight calculator that can be called without building an array for
+     * every corner. apply2 and apply3 take the offsets directly, and applyN
+     * reads the first dimensions offsets of a buffer that the caller reuses.
+     * They all have to agree with each other (and with apply).
+     */
+    public static interface WeightCalculator extends MultiInputDoubleFunction {
+        public double apply2(double offsetX, double offsetY);
+
+        public double apply3(double offsetX, double offsetY, double offsetZ);
+
+        public double applyN(double[] offsets, int dimensions);
+
+        @Override
+        public default double apply(double... offsets) {
+            return applyN(offsets, offsets.length);
+        }
+    }
+
     @FunctionalInterface
     public static interface MultiLongToMultiDoubleFunction {
         public double[] apply(long... inputs);
     }
 
+    /**
+     * A slope generator that looks slopes up in a seeded table instead of hashing
+     * every corner, like the permutation table from Ken Perlin's original
+     * implementation. The corner coordinates are folded through the permutation
+     * to pick one of the table's slopes, so it costs a few array loads per corner.
+     * 
+     * The downside is that the noise repeats every size units in every dimension,
+     * so size should be bigger than anything that will be viewed at once.
+     */
+    public static class GradientTable implements MultiLongToMultiDoubleFunction {
+        public static final int DEFAULT_SIZE = 256;
+
+        private final int dimensions, mask;
+        // doubled, so that index + (coord & mask) never has to wrap around
+        private final int[] permutation;
+        private final double[][] slopes;
+
+        public GradientTable(long seed, int dimensions) {
+            this(seed, dimensions, DEFAULT_SIZE);
+        }
+
+        /**
+         * @param seed       the same seed always gives the same table
+         * @param dimensions the number of coordinates the table will be called with
+         * @param size       a power of two
+         */
+        public GradientTable(long seed, int dimensions, int size) {
+            if (dimensions <= 0) {
+                throw new IllegalArgumentException("Dimensions must be positive.");
+            }
+            if (size <= 0 || Integer.bitCount(size) != 1) {
+                throw new IllegalArgumentException("Size must be a power of two.");
+            }
+
+            this.dimensions = dimensions;
+            this.mask = size - 1;
+
+            permutation = new int[2 * size];
+            for (int i = 0; i < size; i++) {
+                permutation[i] = i;
+            }
+            // Fisher-Yates shuffle, with the hash standing in for a Random
+            for (int i = size - 1; i > 0; i--) {
+                int j = (int) Long.remainderUnsigned(hash(seed, -1, i), i + 1);
+                int temp = permutation[i];
+                permutation[i] = permutation[j];
+                permutation[j] = temp;
+            }
+            System.arraycopy(permutation, 0, permutation, size, size);
+
+            // same range as defaultSlopeGenerator so the two look alike
+            slopes = new double[size][dimensions];
+            for (int i = 0; i < size; i++) {
+                for (int dimension = 0; dimension < dimensions; dimension++) {
+                    slopes[i][dimension] = random(-2, 2, seed, i, dimension);
+                }
+            }
+        }
+
+        public int getDimensions() {
+            return dimensions;
+        }
+
+        public int index(long... coords) {
+            int index = 0;
+            for (long coord : coords) {
+                index = permutation[index + (int) (coord & mask)];
+            }
+            return index;
+        }
+
+        public int index(long x) {
+            return permutation[(int) (x & mask)];
+        }
+
+        public int index(long x, long y) {
+            return permutation[index(x) + (int) (y & mask)];
+        }
+
+        public int index(long x, long y, long z) {
+            return permutation[index(x, y) + (int) (z & mask)];
+        }
+
+        public int index(long x, long y, long z, long w) {
+            return permutation[index(x, y, z) + (int) (w & mask)];
+        }
+
+        public double slope(int index, int dimension) {
+            return slopes[index][dimension];
+        }
+
+        /**
+         * The returned array is shared by every corner with the same index, so it
+         * must not be modified. perlin only reads it.
+         */
+        @Override
+        public double[] apply(long... coords) {
+            if (coords.length != dimensions) {
+                throw new IllegalArgumentException(
+                        "Expected " + dimensions + " coordinates but got " + coords.length + ".");
+            }
+            return slopes[index(coords)];
+        }
+    }
+
+    /**
+     * Remembers the slopes an expensive slope generator gave for recently used
+     * corners. Every corner is asked for by all 2^n cells around it, so most
+     * calls end up being hits.
+     * 
+     * The corner coordinates are packed into one long (64 / dimensions bits each)
+     * and looked up in a fixed size open addressing table, so nothing is boxed
+     * and the memory never grows. A corner is looked for in MAX_PROBES slots
+     * after its hash; when none of them has it or is empty, it replaces the one
+     * right at its hash. Corners with coordinates too big to pack just skip the
+     * cache.
+     * 
+     * Each slot holds an immutable entry, and slots are only ever swapped
+     * atomically, so any number of threads can use it at once without locks.
+     * (Two threads missing the same corner can both call the generator, which
+     * is fine as long as the generator always gives the same slopes.)
+     */
+    public static class MemoizedSlopeGenerator implements MultiLongToMultiDoubleFunction {
+        public static final int MAX_PROBES = 8;
+
+        private static final class Entry {
+            private final long key;
+            private final double[] slope;
+
+            private Entry(long key, double[] slope) {
+                this.key = key;
+                this.slope = slope;
+            }
+        }
+
+        private final MultiLongToMultiDoubleFunction slopeGenerator;
+        private final int dimensions, bitsPerCoord, mask;
+        private final AtomicReferenceArray<Entry> entries;
+
+        /**
+         * @param capacity rounded up to a power of two
+         */
+        public MemoizedSlopeGenerator(MultiLongToMultiDoubleFunction slopeGenerator, int dimensions,
+                int capacity) {
+            if (dimensions <= 0 || dimensions > 64) {
+                throw new IllegalArgumentException("Dimensions must be between 1 and 64.");
+            }
+            if (capacity <= 0 || capacity > 1 << 30) {
+                throw new IllegalArgumentException("Capacity must be between 1 and 2^30.");
+            }
+
+            this.slopeGenerator = slopeGenerator;
+            this.dimensions = dimensions;
+            this.bitsPerCoord = 64 / dimensions;
+
+            int tableSize = Integer.highestOneBit(capacity);
+            if (tableSize < capacity) {
+                tableSize <<= 1;
+            }
+            this.mask = tableSize - 1;
+            this.entries = new AtomicReferenceArray<Entry>(tableSize);
+        }
+
+        public int getCapacity() {
+            return entries.length();
+        }
+
+        public int getDimensions() {
+            return dimensions;
+        }
+
+        /**
+         * The returned array is shared by every call for the same corner (while it
+         * is cached), so it must not be modified. perlin only reads it.
+         */
+        @Override
+        public double[] apply(long... coords) {
+            if (coords.length != dimensions) {
+                throw new IllegalArgumentException(
+                        "Expected " + dimensions + " coordinates but got " + coords.length + ".");
+            }
+
+            long key = 0;
+            for (long coord : coords) {
+                if (bitsPerCoord == 64) {
+                    key = coord;
+                } else if (coord >> (bitsPerCoord - 1) != 0 && coord >> (bitsPerCoord - 1) != -1) {
+                    // doesn't fit, so two corners could end up with the same key
+                    return slopeGenerator.apply(coords);
+                } else {
+                    key = (key << bitsPerCoord) | (coord & ((1L << bitsPerCoord) - 1));
+                }
+            }
+
+            int home = (int) mix(key) & mask;
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                int slot = (home + probe) & mask;
+                Entry entry = entries.getAcquire(slot);
+
+                if (entry == null) {
+                    return store(slot, key, coords);
+                }
+                if (entry.key == key) {
+                    return entry.slope;
+                }
+            }
+
+            return store(home, key, coords);
+        }
+
+        private double[] store(int slot, long key, long[] coords) {
+            // copied, in case the generator reuses its array like GradientTable does
+            double[] slope = slopeGenerator.apply(coords).clone();
+            entries.setRelease(slot, new Entry(key, slope));
+            return slope;
+        }
+
+        public void clear() {
+            for (int slot = 0; slot < entries.length(); slot++) {
+                entries.setRelease(slot, null);
+            }
+        }
+    }
+
     /**
      * The points in data have one more dimension than input.
      * 
@@ -676,8 +971,344 @@ public class Perlin {
         return slopeInterpolation(offset, slopes, weightCalculator);
     }
 
+    /**
+     * The same as the other perlin, but the weights are calculated through
+     * applyN with one offsets buffer for every corner, and the corner coordinates
+     * are one reused array too.
+     */
+    public static double perlin(double[] point, MultiLongToMultiDoubleFunction slopeCalculator,
+            WeightCalculator weightCalculator) {
+        int dimensions = point.length;
+        long[] cell = new long[dimensions], corner = new long[dimensions];
+        double[] offset = new double[dimensions], differences = new double[dimensions];
+
+        for (int dimension = 0; dimension < dimensions; dimension++) {
+            cell[dimension] = (long) point[dimension];
+            offset[dimension] = point[dimension] % 1;
+        }
+
+        double weightedSum = 0, sumOfWeights = 0;
+
+        for (int i = 0; i < 1 << dimensions; i++) {
+            for (int dimension = 0; dimension < dimensions; dimension++) {
+                corner[dimension] = cell[dimension] + ((i >> dimension) & 1);
+            }
+            double[] slope = slopeCalculator.apply(corner);
+
+            double height = 0;
+            for (int dimension = 0; dimension < dimensions; dimension++) {
+                double difference = offset[dimension] - ((i >> dimension) & 1);
+                height += slope[dimension] * difference;
+                differences[dimension] = Math.abs(difference);
+            }
+
+            double weight = weightCalculator.applyN(differences, dimensions);
+            weightedSum += weight * height;
+            sumOfWeights += weight;
+        }
+
+        return weightedSum / sumOfWeights;
+    }
+
+    /**
+     * 2D perlin with any slope and weight calculator, without any arrays of its
+     * own (the slope calculator can still make some).
+     */
+    public static double perlin2(double x, double y, MultiLongToMultiDoubleFunction slopeCalculator,
+            WeightCalculator weightCalculator) {
+        long cellX = (long) x, cellY = (long) y;
+        double offsetX = x % 1, offsetY = y % 1;
+
+        double weightedSum = 0, sumOfWeights = 0;
+
+        for (int corner = 0; corner < 4; corner++) {
+            int cornerX = corner & 1, cornerY = (corner >> 1) & 1;
+            double differenceX = offsetX - cornerX, differenceY = offsetY - cornerY;
+
+            double[] slope = slopeCalculator.apply(cellX + cornerX, cellY + cornerY);
+            double height = slope[0] * differenceX + slope[1] * differenceY;
+
+            double weight = weightCalculator.apply2(Math.abs(differenceX), Math.abs(differenceY));
+            weightedSum += weight * height;
+            sumOfWeights += weight;
+        }
+
+        return weightedSum / sumOfWeights;
+    }
+
+    public static double perlin3(double x, double y, double z, MultiLongToMultiDoubleFunction slopeCalculator,
+            WeightCalculator weightCalculator) {
+        long cellX = (long) x, cellY = (long) y, cellZ = (long) z;
+        double offsetX = x % 1, offsetY = y % 1, offsetZ = z % 1;
+
+        double weightedSum = 0, sumOfWeights = 0;
+
+        for (int corner = 0; corner < 8; corner++) {
+            int cornerX = corner & 1, cornerY = (corner >> 1) & 1, cornerZ = (corner >> 2) & 1;
+            double differenceX = offsetX - cornerX, differenceY = offsetY - cornerY,
+                    differenceZ = offsetZ - cornerZ;
+
+            double[] slope = slopeCalculator.apply(cellX + cornerX, cellY + cornerY, cellZ + cornerZ);
+            double height = slope[0] * differenceX + slope[1] * differenceY + slope[2] * differenceZ;
+
+            double weight = weightCalculator.apply3(Math.abs(differenceX), Math.abs(differenceY),
+                    Math.abs(differenceZ));
+            weightedSum += weight * height;
+            sumOfWeights += weight;
+        }
+
+        return weightedSum / sumOfWeights;
+    }
+
     public static double perlin(double... point) {
-        return perlin(point, Perlin::defaultSlopeGenerator, Perlin::sumCoordinateSquaredWeightCalculator);
+        return switch (point.length) {
+            case 2 -> perlin2(point[0], point[1]);
+            case 3 -> perlin3(point[0], point[1], point[2]);
+            case 4 -> perlin4(point[0], point[1], point[2], point[3]);
+            default -> perlin(point, Perlin::defaultSlopeGenerator, SUM_COORDINATE_SQUARED_WEIGHT);
+        };
+    }
+
+    /*
+     * The perlinN functions below give exactly the same values as
+     * perlin(point, Perlin::defaultSlopeGenerator,
+     * Perlin::sumCoordinateSquaredWeightCalculator), but without any arrays. The
+     * arithmetic is done in the same order as slopeInterpolation and interpolate
+     * so that even the rounding matches.
+     */
+
+    /**
+     * sumCoordinateSquaredWeightCalculator, but for a sum of squares that was
+     * already calculated.
+     */
+    private static double sumCoordinateSquaredWeight(double sumOfSquares) {
+        double temp = clamp(sumOfSquares) - 1;
+        return temp * temp;
+    }
+
+    static double defaultSlope(long cornerHash, int dimension) {
+        return hashToDouble(hashCombine(cornerHash, dimension), -2, 2);
+    }
+
+    /**
+     * slopeInterpolation for 2 dimensions with the default weight calculator. The
+     * slopes are in the same corner order as slopeInterpolation: (0, 0), (1, 0),
+     * (0, 1), (1, 1).
+     */
+    static double slopeInterpolation2(double offsetX, double offsetY,
+            double slope0X, double slope0Y, double slope1X, double slope1Y,
+            double slope2X, double slope2Y, double slope3X, double slope3Y) {
+        double nearX = offsetX, farX = offsetX - 1, nearY = offsetY, farY = offsetY - 1;
+
+        double weight0 = sumCoordinateSquaredWeight(nearX * nearX + nearY * nearY);
+        double weight1 = sumCoordinateSquaredWeight(farX * farX + nearY * nearY);
+        double weight2 = sumCoordinateSquaredWeight(nearX * nearX + farY * farY);
+        double weight3 = sumCoordinateSquaredWeight(farX * farX + farY * farY);
+
+        double weightedSum = 0, sumOfWeights = 0;
+        weightedSum += weight0 * (slope0X * nearX + slope0Y * nearY);
+        sumOfWeights += weight0;
+        weightedSum += weight1 * (slope1X * farX + slope1Y * nearY);
+        sumOfWeights += weight1;
+        weightedSum += weight2 * (slope2X * nearX + slope2Y * farY);
+        sumOfWeights += weight2;
+        weightedSum += weight3 * (slope3X * farX + slope3Y * farY);
+        sumOfWeights += weight3;
+
+        return weightedSum / sumOfWeights;
+    }
+
+    public static double perlin2(double x, double y) {
+        long cellX = (long) x, cellY = (long) y;
+
+        long hash0 = hash(cellX, cellY), hash1 = hash(cellX + 1, cellY),
+                hash2 = hash(cellX, cellY + 1), hash3 = hash(cellX + 1, cellY + 1);
+
+        return slopeInterpolation2(x % 1, y % 1,
+                defaultSlope(hash0, 0), defaultSlope(hash0, 1),
+                defaultSlope(hash1, 0), defaultSlope(hash1, 1),
+                defaultSlope(hash2, 0), defaultSlope(hash2, 1),
+                defaultSlope(hash3, 0), defaultSlope(hash3, 1));
+    }
+
+    public static double perlin3(double x, double y, double z) {
+        long cellX = (long) x, cellY = (long) y, cellZ = (long) z;
+        double offsetX = x % 1, offsetY = y % 1, offsetZ = z % 1;
+
+        double weightedSum = 0, sumOfWeights = 0;
+
+        for (int corner = 0; corner < 8; corner++) {
+            int cornerX = corner & 1, cornerY = (corner >> 1) & 1, cornerZ = (corner >> 2) & 1;
+            double differenceX = offsetX - cornerX, differenceY = offsetY - cornerY,
+                    differenceZ = offsetZ - cornerZ;
+
+            long cornerHash = hash(cellX + cornerX, cellY + cornerY, cellZ + cornerZ);
+            double height = defaultSlope(cornerHash, 0) * differenceX + defaultSlope(cornerHash, 1) * differenceY
+                    + defaultSlope(cornerHash, 2) * differenceZ;
+
+            double weight = sumCoordinateSquaredWeight(
+                    differenceX * differenceX + differenceY * differenceY + differenceZ * differenceZ);
+            weightedSum += weight * height;
+            sumOfWeights += weight;
+        }
+
+        return weightedSum / sumOfWeights;
+    }
+
+    public static double perlin4(double x, double y, double z, double w) {
+        long cellX = (long) x, cellY = (long) y, cellZ = (long) z, cellW = (long) w;
+        double offsetX = x % 1, offsetY = y % 1, offsetZ = z % 1, offsetW = w % 1;
+
+        double weightedSum = 0, sumOfWeights = 0;
+
+        for (int corner = 0; corner < 16; corner++) {
+            int cornerX = corner & 1, cornerY = (corner >> 1) & 1, cornerZ = (corner >> 2) & 1,
+                    cornerW = (corner >> 3) & 1;
+            double differenceX = offsetX - cornerX, differenceY = offsetY - cornerY,
+                    differenceZ = offsetZ - cornerZ, differenceW = offsetW - cornerW;
+
+            long cornerHash = hash(cellX + cornerX, cellY + cornerY, cellZ + cornerZ, cellW + cornerW);
+            double height = defaultSlope(cornerHash, 0) * differenceX + defaultSlope(cornerHash, 1) * differenceY
+                    + defaultSlope(cornerHash, 2) * differenceZ + defaultSlope(cornerHash, 3) * differenceW;
+
+            double weight = sumCoordinateSquaredWeight(differenceX * differenceX + differenceY * differenceY
+                    + differenceZ * differenceZ + differenceW * differenceW);
+            weightedSum += weight * height;
+            sumOfWeights += weight;
+        }
+
+        return weightedSum / sumOfWeights;
+    }
+
+    /**
+     * Samples a whole grid of 2D perlin noise into out, which is row major:
+     * out[row * width + col] = perlin2(x0 + col * dx, y0 + row * dy).
+     * 
+     * Neighbouring samples usually share a lattice cell, so the corner slopes are
+     * only recalculated when the cell changes instead of once per sample.
+     */
+    public static void fill(double[] out, int width, int height, double x0, double y0, double dx, double dy) {
+        checkGrid(out, width, height);
+
+        for (int row = 0; row < height; row++) {
+            double y = y0 + row * dy;
+            long cellY = (long) y;
+            double offsetY = y % 1;
+
+            // no sentinel cell, since (long) x can be any long (even MIN_VALUE)
+            boolean loaded = false;
+            long cellX = 0;
+            double slope0X = 0, slope0Y = 0, slope1X = 0, slope1Y = 0,
+                    slope2X = 0, slope2Y = 0, slope3X = 0, slope3Y = 0;
+
+            for (int col = 0; col < width; col++) {
+                double x = x0 + col * dx;
+
+                if (!loaded || (long) x != cellX) {
+                    loaded = true;
+                    cellX = (long) x;
+
+                    long hash0 = hash(cellX, cellY), hash1 = hash(cellX + 1, cellY),
+                            hash2 = hash(cellX, cellY + 1), hash3 = hash(cellX + 1, cellY + 1);
+                    slope0X = defaultSlope(hash0, 0);
+                    slope0Y = defaultSlope(hash0, 1);
+                    slope1X = defaultSlope(hash1, 0);
+                    slope1Y = defaultSlope(hash1, 1);
+                    slope2X = defaultSlope(hash2, 0);
+                    slope2Y = defaultSlope(hash2, 1);
+                    slope3X = defaultSlope(hash3, 0);
+                    slope3Y = defaultSlope(hash3, 1);
+                }
+
+                out[row * width + col] = slopeInterpolation2(x % 1, offsetY,
+                        slope0X, slope0Y, slope1X, slope1Y, slope2X, slope2Y, slope3X, slope3Y);
+            }
+        }
+    }
+
+    /**
+     * Same as the other fill, but with any 2D slope calculator (like a
+     * GradientTable). It is only called 4 times per cell change.
+     */
+    public static void fill(double[] out, int width, int height, double x0, double y0, double dx, double dy,
+            MultiLongToMultiDoubleFunction slopeCalculator) {
+        checkGrid(out, width, height);
+
+        for (int row = 0; row < height; row++) {
+            double y = y0 + row * dy;
+            long cellY = (long) y;
+            double offsetY = y % 1;
+
+            boolean loaded = false;
+            long cellX = 0;
+            double[] slope0 = null, slope1 = null, slope2 = null, slope3 = null;
+
+            for (int col = 0; col < width; col++) {
+                double x = x0 + col * dx;
+
+                if (!loaded || (long) x != cellX) {
+                    loaded = true;
+                    cellX = (long) x;
+
+                    slope0 = slopeCalculator.apply(cellX, cellY);
+                    slope1 = slopeCalculator.apply(cellX + 1, cellY);
+                    slope2 = slopeCalculator.apply(cellX, cellY + 1);
+                    slope3 = slopeCalculator.apply(cellX + 1, cellY + 1);
+                }
+
+                out[row * width + col] = slopeInterpolation2(x % 1, offsetY,
+                        slope0[0], slope0[1], slope1[0], slope1[1], slope2[0], slope2[1], slope3[0], slope3[1]);
+            }
+        }
+    }
+
+    /**
+     * The same as fill for doubles, rounded to floats. See HeightMap.Precision for
+     * how far off that is.
+     */
+    public static void fill(float[] out, int width, int height, double x0, double y0, double dx, double dy) {
+        checkGrid(out.length, width, height);
+
+        // one row at a time, since a row is where the corner slopes get reused anyway
+        double[] rowBuffer = new double[width];
+        for (int row = 0; row < height; row++) {
+            fill(rowBuffer, width, 1, x0, y0 + row * dy, dx, dy);
+
+            for (int col = 0; col < width; col++) {
+                out[row * width + col] = (float) rowBuffer[col];
+            }
+        }
+    }
+
+    /**
+     * Fills a height map of any precision, with the same coordinates as fill.
+     */
+    public static void fill(HeightMap heightMap, double x0, double y0, double dx, double dy) {
+        int width = heightMap.getWidth();
+
+        double[] rowBuffer = new double[width];
+        for (int row = 0; row < heightMap.getHeight(); row++) {
+            fill(rowBuffer, width, 1, x0, y0 + row * dy, dx, dy);
+
+            for (int col = 0; col < width; col++) {
+                heightMap.set(row, col, rowBuffer[col]);
+            }
+        }
+    }
+
+    static void checkGrid(double[] out, int width, int height) {
+        checkGrid(out.length, width, height);
+    }
+
+    /**
+     * The check every fill does, for an output of any type that has length
+     * samples.
+     */
+    static void checkGrid(int length, int width, int height) {
+        if (width < 0 || height < 0 || (long) width * height > length) {
+            throw new IllegalArgumentException(
+                    "A " + width + "x" + height + " grid does not fit in " + length + " samples.");
+        }
     }
 
     public static void slopeInterpolationDemo1D() {
@@ -711,7 +1342,7 @@ public class Perlin {
 
                     // graph.addFunction(fadeFunction);
                     graph.addFunction((x) -> slopeInterpolation(new double[] { x },
-                            new double[][] { { slope0 }, { slope1 } }, Perlin::sumCoordinateSquaredWeightCalculator));
+                            new double[][] { { slope0 }, { slope1 } }, SUM_COORDINATE_SQUARED_WEIGHT));
                     // graph.addFunction((x) -> slopeInterpolation(new double[] { x },
                     // new double[][] { { slope0 }, { slope1 } }, fadeFunction));
                     graph.addFunction((x) -> slope0 * x);
@@ -787,6 +1418,12 @@ public class Perlin {
             JComboBox<String> colorGradientComboBox = new JComboBox<String>(
                     new String[] { "Default", "Stripes", "Game Terrain" });
 
+            JComboBox<String> slopeGeneratorComboBox = new JComboBox<String>(
+                    new String[] { "Hashed", "Table", "Hashed (Memoized)" });
+            GradientTable gradientTable = new GradientTable(0, 2);
+            MemoizedSlopeGenerator memoizedSlopeGenerator = new MemoizedSlopeGenerator(
+                    Perlin::defaultSlopeGenerator, 2, 1 << 12);
+
             ActionListener actionListener = new ActionListener() {
                 @Override
                 public void actionPerformed(ActionEvent e) {
@@ -794,12 +1431,17 @@ public class Perlin {
 
                     int VIEW_SIZE = 5;
 
-                    MultiLongToMultiDoubleFunction slopeGenerator = Perlin::defaultSlopeGenerator;
-                    MultiInputDoubleFunction weightCalculator = switch ((String) weightFunctionComboBox
+                    MultiLongToMultiDoubleFunction slopeGenerator = switch ((String) slopeGeneratorComboBox
+                            .getSelectedItem()) {
+                        case "Hashed" -> Perlin::defaultSlopeGenerator;
+                        case "Table" -> gradientTable;
+                        case "Hashed (Memoized)" -> memoizedSlopeGenerator;
+                        default -> null;
+                    };
+                    WeightCalculator weightCalculator = switch ((String) weightFunctionComboBox
                             .getSelectedItem()) {
-                        case "Sum Coord Squared" -> Perlin::sumCoordinateSquaredWeightCalculator;
-                        case "Max Coord" ->
-                            offsets -> maxCoordinateWeightCalculator(Perlin::parabolic1DWeightCalculator, offsets);
+                        case "Sum Coord Squared" -> SUM_COORDINATE_SQUARED_WEIGHT;
+                        case "Max Coord" -> MAX_COORDINATE_PARABOLIC_WEIGHT;
                         default -> null;
                     };
                     DoubleToIntFunction colorGradient = switch ((String) colorGradientComboBox.getSelectedItem()) {
@@ -809,12 +1451,12 @@ public class Perlin {
                         default -> null;
                     };
 
-                    canvas.addShape(new ColorMap(
-                            (x, y) -> MathUtils.mapToRange(
-                                    perlin(new double[] { x, y }, slopeGenerator,
-                                            weightCalculator),
-                                    -1, 1, 0, 1),
-                            540, 540, 0, VIEW_SIZE, 0, VIEW_SIZE, colorGradient));
+                    ColorMap colorMap = new ColorMap(
+                            (x, y) -> MathUtils.mapToRange(perlin2(x, y, slopeGenerator, weightCalculator), -1, 1,
+                                    0, 1),
+                            540, 540, 0, VIEW_SIZE, 0, VIEW_SIZE, colorGradient);
+                    colorMap.setPool(ForkJoinPool.commonPool());
+                    canvas.addShape(colorMap);
 
                     // display the slopes
                     double SLOPE_SCALE = 0.5;
@@ -838,9 +1480,11 @@ public class Perlin {
 
             weightFunctionComboBox.addActionListener(actionListener);
             colorGradientComboBox.addActionListener(actionListener);
+            slopeGeneratorComboBox.addActionListener(actionListener);
 
             controlPanel.add(weightFunctionComboBox);
             controlPanel.add(colorGradientComboBox);
+            controlPanel.add(slopeGeneratorComboBox);
         }
 
         mainFrame.setLayout(new BorderLayout());
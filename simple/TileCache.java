@@ -0,0 +1,250 @@
+package simple;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Keeps generated tiles (chunks, noise tiles, anything that is a HeightMap) so
+ * that panning back over the same area doesn't generate it again. When the
+ * tiles add up to more than maxBytes, the least recently used ones are thrown
+ * out first.
+ *
+ * Tiles are counted by the storage behind them (HeightMap.getStorageBytes),
+ * not just width * height heights, so a view over a bigger array counts as
+ * the whole array.
+ *
+ * With OFF_HEAP, maxBytes doesn't bound the memory the process uses. Throwing
+ * a tile out only drops the cache's reference to it; its native memory is
+ * freed whenever the garbage collector gets to the buffers, which can be much
+ * later since they hardly take up any heap. (-XX:MaxDirectMemorySize is the
+ * real limit there.)
+ *
+ * It is safe to use from several threads. Tiles are generated outside the
+ * lock, so two threads missing the same tile at once can both generate it
+ * (the second one just replaces the first).
+ */
+public class TileCache {
+    public static enum Backing {
+        /** The tiles are kept as they are. */
+        STRONG,
+        /**
+         * The tiles are only softly reachable, so the garbage collector can take
+         * them back before memory runs out. A collected tile counts as a miss.
+         */
+        SOFT,
+        /**
+         * The tiles are copied into direct ByteBuffers, which are off the heap, so
+         * a big cache doesn't make garbage collection slower. Reads are a bit
+         * slower than from an array. Evicted tiles keep their native memory until
+         * they are garbage collected.
+         */
+        OFF_HEAP
+    }
+
+    /**
+     * Everything that decides what a tile looks like. parameters is whatever
+     * else the generator takes (roughness, frequency and so on).
+     */
+    public static final class Key {
+        private final String generator;
+        private final double[] parameters;
+        private final long seed;
+        private final long tileRow, tileCol;
+        private final int levelOfDetail;
+        private final int hashCode;
+
+        public Key(String generator, double[] parameters, long seed, long tileRow, long tileCol, int levelOfDetail) {
+            this.generator = generator;
+            this.parameters = parameters.clone();
+            this.seed = seed;
+            this.tileRow = tileRow;
+            this.tileCol = tileCol;
+            this.levelOfDetail = levelOfDetail;
+
+            long hash = MathUtils.hash(generator.hashCode(), Arrays.hashCode(this.parameters), seed, tileRow);
+            hashCode = (int) MathUtils.hash(hash, tileCol, levelOfDetail);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key key)) {
+                return false;
+            }
+
+            return seed == key.seed && tileRow == key.tileRow && tileCol == key.tileCol
+                    && levelOfDetail == key.levelOfDetail && generator.equals(key.generator)
+                    && Arrays.equals(parameters, key.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return generator + Arrays.toString(parameters) + " seed " + seed + " tile (" + tileRow + ", " + tileCol
+                    + ") level of detail " + levelOfDetail;
+        }
+    }
+
+    private static class Entry {
+        private final HeightMap strongTile;
+        private final SoftReference<HeightMap> softTile;
+        private final long bytes;
+
+        private Entry(HeightMap tile, Backing backing) {
+            this.strongTile = backing == Backing.SOFT ? null : tile;
+            this.softTile = backing == Backing.SOFT ? new SoftReference<HeightMap>(tile) : null;
+            this.bytes = sizeOf(tile);
+        }
+
+        private HeightMap getTile() {
+            return softTile == null ? strongTile : softTile.get();
+        }
+    }
+
+    private final long maxBytes;
+    private final Backing backing;
+
+    // in access order, so the first entry is always the least recently used one
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0, misses = 0, evictions = 0;
+
+    public TileCache(long maxBytes, Backing backing) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The cache has to be able to hold something.");
+        }
+
+        this.maxBytes = maxBytes;
+        this.backing = backing;
+    }
+
+    public TileCache(long maxBytes) {
+        this(maxBytes, Backing.STRONG);
+    }
+
+    /**
+     * The tile for key, using generator to make it if it isn't cached. Cached
+     * tiles are shared, so they shouldn't be changed.
+     */
+    public HeightMap get(Key key, Supplier<HeightMap> generator) {
+        HeightMap tile = getIfPresent(key);
+        if (tile != null) {
+            return tile;
+        }
+
+        tile = generator.get();
+        if (backing == Backing.OFF_HEAP) {
+            tile = copyOffHeap(tile);
+        }
+        put(key, tile);
+        return tile;
+    }
+
+    /**
+     * The cached tile for key, or null. Either way, it counts as a hit or a miss.
+     */
+    public synchronized HeightMap getIfPresent(Key key) {
+        Entry entry = entries.get(key);
+        HeightMap tile = entry == null ? null : entry.getTile();
+
+        if (tile == null) {
+            if (entry != null) {
+                // the garbage collector got to it first
+                remove(key);
+            }
+            misses++;
+        } else {
+            hits++;
+        }
+        return tile;
+    }
+
+    private synchronized void put(Key key, HeightMap tile) {
+        Entry entry = new Entry(tile, backing);
+        if (entry.bytes > maxBytes) {
+            // it would just push everything else out and then be thrown out itself
+            return;
+        }
+
+        Entry replaced = entries.put(key, entry);
+        if (replaced != null) {
+            bytes -= replaced.bytes;
+        }
+        bytes += entry.bytes;
+
+        Iterator<Map.Entry<Key, Entry>> leastRecentlyUsed = entries.entrySet().iterator();
+        while (bytes > maxBytes) {
+            bytes -= leastRecentlyUsed.next().getValue().bytes;
+            leastRecentlyUsed.remove();
+            evictions++;
+        }
+    }
+
+    private void remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.bytes;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * How many bytes the cached tiles take up, counting soft tiles that might
+     * have been collected already.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized int getTileCount() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TileCache " + entries.size() + " tiles, " + bytes + "/" + maxBytes + " bytes, " + hits + " hits, "
+                + misses + " misses, " + evictions + " evictions";
+    }
+
+    private static long sizeOf(HeightMap tile) {
+        return tile.getStorageBytes();
+    }
+
+    private static HeightMap copyOffHeap(HeightMap tile) {
+        HeightMap copy = HeightMap.create(tile.getWidth(), tile.getHeight(), tile.getPrecision(),
+                HeightMap.Storage.OFF_HEAP);
+        for (int row = 0; row < tile.getHeight(); row++) {
+            for (int col = 0; col < tile.getWidth(); col++) {
+                copy.set(row, col, tile.get(row, col));
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,218 @@
+package simple;
+
+import static simple.MathUtils.hash;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Perlin.fill, but evaluating several neighbouring samples at once with the
+ * Vector API (4 at a time with AVX2, 8 with AVX-512). The output is exactly
+ * the same as Perlin.fill, since every lane does the same operations in the
+ * same order.
+ *
+ * The Vector API is still an incubator module, so the JVM has to be started
+ * with --add-modules jdk.incubator.vector for it to be used. Without it, fill
+ * just calls Perlin.fill.
+ *
+ * Every row of a grid has the same x coordinates, so the x offsets and which
+ * cell each column is in are worked out once. Each row then only makes the
+ * slopes of the corners along its two lattice lines (once per cell, like
+ * Perlin.fill), and the lanes gather the ones they need.
+ */
+public class VectorPerlin {
+    private static final boolean AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private static boolean enabled = true;
+
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Turns the vector kernel off (or back on), for comparing the two.
+     */
+    public static void setEnabled(boolean enabled) {
+        VectorPerlin.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled && AVAILABLE;
+    }
+
+    /**
+     * The same as Perlin.fill(out, width, height, x0, y0, dx, dy).
+     */
+    public static void fill(double[] out, int width, int height, double x0, double y0, double dx, double dy) {
+        if (!isEnabled() || !Kernel.fill(out, width, height, x0, y0, dx, dy)) {
+            Perlin.fill(out, width, height, x0, y0, dx, dy);
+        }
+    }
+
+    /**
+     * Checks fill against Perlin.fill on some ordinary grids and some that
+     * aren't (infinite steps, cells from both ends of the long range). Run it
+     * with --add-modules jdk.incubator.vector, or it just compares Perlin.fill
+     * with itself.
+     */
+    public static void main(String[] args) {
+        double[][] grids = {
+                // x0, y0, dx, dy
+                { 0.3, 0.2, 0.05, 0.07 },
+                { -12.5, 7.25, 0.013, -0.4 },
+                { 1e6, -1e6, 3.7, 0.5 },
+                { -1, 0, Double.POSITIVE_INFINITY, 1 },
+                { 5, 0, Double.POSITIVE_INFINITY, 1 },
+                { -5e18, 0, 1e18, 1 },
+                { 0.5, 0, Double.NaN, 1 },
+                { 0.5, Double.NEGATIVE_INFINITY, 0.1, 0 },
+        };
+        int width = 37, height = 3;
+        boolean allMatch = true;
+
+        for (double[] grid : grids) {
+            double[] expected = new double[width * height], actual = new double[width * height];
+            Perlin.fill(expected, width, height, grid[0], grid[1], grid[2], grid[3]);
+            fill(actual, width, height, grid[0], grid[1], grid[2], grid[3]);
+
+            int mismatches = 0;
+            for (int i = 0; i < expected.length; i++) {
+                if (Double.compare(expected[i], actual[i]) != 0) {
+                    mismatches++;
+                }
+            }
+            allMatch &= mismatches == 0;
+            System.out.println(Arrays.toString(grid) + ": " + mismatches + " mismatches");
+        }
+
+        System.out.println(isEnabled() ? "Compared with the vector kernel." : "The vector kernel isn't available.");
+        if (!allMatch) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Only loaded once the module is known to be there, since loading it
+     * without the module throws NoClassDefFoundError.
+     */
+    private static class Kernel {
+        private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+        /**
+         * @return false if the grid covers so many cells per sample that the
+         *         per-row corner arrays would be bigger than the grid (then there
+         *         is nothing to share and Perlin.fill should be used)
+         */
+        private static boolean fill(double[] out, int width, int height, double x0, double y0, double dx,
+                double dy) {
+            Perlin.checkGrid(out, width, height);
+            if (width == 0 || height == 0) {
+                return true;
+            }
+
+            // from every column instead of just the ends, since a NaN column (like 0 *
+            // Infinity) is cell 0 wherever the rest are
+            long cellMin = Long.MAX_VALUE, cellMax = Long.MIN_VALUE;
+            for (int col = 0; col < width; col++) {
+                long cell = (long) (x0 + col * dx);
+                cellMin = Math.min(cellMin, cell);
+                cellMax = Math.max(cellMax, cell);
+            }
+            try {
+                if (Math.subtractExact(cellMax, cellMin) > width) {
+                    return false;
+                }
+            } catch (ArithmeticException e) {
+                // cells from both ends of the long range, definitely more than width
+                return false;
+            }
+
+            double[] offsetX = new double[width];
+            // index of the cell's left corner in the corner arrays
+            int[] cornerIndex = new int[width];
+            for (int col = 0; col < width; col++) {
+                double x = x0 + col * dx;
+                offsetX[col] = x % 1;
+                cornerIndex[col] = (int) ((long) x - cellMin);
+            }
+
+            int corners = (int) (cellMax - cellMin) + 2;
+            double[] bottomX = new double[corners], bottomY = new double[corners],
+                    topX = new double[corners], topY = new double[corners];
+
+            int upperBound = SPECIES.loopBound(width);
+            boolean loaded = false;
+            long cellY = 0;
+
+            for (int row = 0; row < height; row++) {
+                double y = y0 + row * dy;
+                double offsetY = y % 1;
+
+                if (!loaded || (long) y != cellY) {
+                    loaded = true;
+                    cellY = (long) y;
+                    for (int corner = 0; corner < corners; corner++) {
+                        long bottomHash = hash(cellMin + corner, cellY), topHash = hash(cellMin + corner, cellY + 1);
+                        bottomX[corner] = Perlin.defaultSlope(bottomHash, 0);
+                        bottomY[corner] = Perlin.defaultSlope(bottomHash, 1);
+                        topX[corner] = Perlin.defaultSlope(topHash, 0);
+                        topY[corner] = Perlin.defaultSlope(topHash, 1);
+                    }
+                }
+
+                double nearY = offsetY, farY = offsetY - 1;
+                double nearYSquared = nearY * nearY, farYSquared = farY * farY;
+                int rowStart = row * width;
+
+                int col = 0;
+                for (; col < upperBound; col += SPECIES.length()) {
+                    DoubleVector nearX = DoubleVector.fromArray(SPECIES, offsetX, col);
+                    DoubleVector farX = nearX.sub(1);
+                    DoubleVector nearXSquared = nearX.mul(nearX), farXSquared = farX.mul(farX);
+
+                    // corners in the same order as slopeInterpolation2: (0, 0), (1, 0), (0, 1), (1, 1)
+                    DoubleVector weight0 = weight(nearXSquared.add(nearYSquared));
+                    DoubleVector weight1 = weight(farXSquared.add(nearYSquared));
+                    DoubleVector weight2 = weight(nearXSquared.add(farYSquared));
+                    DoubleVector weight3 = weight(farXSquared.add(farYSquared));
+
+                    DoubleVector height0 = DoubleVector.fromArray(SPECIES, bottomX, 0, cornerIndex, col).mul(nearX)
+                            .add(DoubleVector.fromArray(SPECIES, bottomY, 0, cornerIndex, col).mul(nearY));
+                    DoubleVector height1 = DoubleVector.fromArray(SPECIES, bottomX, 1, cornerIndex, col).mul(farX)
+                            .add(DoubleVector.fromArray(SPECIES, bottomY, 1, cornerIndex, col).mul(nearY));
+                    DoubleVector height2 = DoubleVector.fromArray(SPECIES, topX, 0, cornerIndex, col).mul(nearX)
+                            .add(DoubleVector.fromArray(SPECIES, topY, 0, cornerIndex, col).mul(farY));
+                    DoubleVector height3 = DoubleVector.fromArray(SPECIES, topX, 1, cornerIndex, col).mul(farX)
+                            .add(DoubleVector.fromArray(SPECIES, topY, 1, cornerIndex, col).mul(farY));
+
+                    // starting from 0 like the scalar version, so even the sign of a 0 matches
+                    DoubleVector weightedSum = DoubleVector.zero(SPECIES).add(weight0.mul(height0))
+                            .add(weight1.mul(height1)).add(weight2.mul(height2)).add(weight3.mul(height3));
+                    DoubleVector sumOfWeights = DoubleVector.zero(SPECIES).add(weight0).add(weight1).add(weight2)
+                            .add(weight3);
+
+                    weightedSum.div(sumOfWeights).intoArray(out, rowStart + col);
+                }
+
+                for (; col < width; col++) {
+                    int corner = cornerIndex[col];
+                    out[rowStart + col] = Perlin.slopeInterpolation2(offsetX[col], offsetY,
+                            bottomX[corner], bottomY[corner], bottomX[corner + 1], bottomY[corner + 1],
+                            topX[corner], topY[corner], topX[corner + 1], topY[corner + 1]);
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Perlin's sumCoordinateSquaredWeight in every lane.
+         */
+        private static DoubleVector weight(DoubleVector sumOfSquares) {
+            DoubleVector temp = sumOfSquares.min(1).max(0).sub(1);
+            return temp.mul(temp);
+        }
+    }
+}